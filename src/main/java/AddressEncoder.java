@@ -0,0 +1,224 @@
+import org.bouncycastle.crypto.digests.RIPEMD160Digest;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+
+import java.util.List;
+
+/**
+ * Encodes derived keys as spendable addresses:
+ * <ul>
+ * <li>P2PKH: Base58Check(version || hash160(serP(K)))</li>
+ * <li>P2SH-P2WPKH (<a href="https://github.com/bitcoin/bips/blob/master/bip-0049.mediawiki">BIP-49</a>):
+ * Base58Check(version || hash160(0x00 0x14 || hash160(serP(K))))</li>
+ * <li>P2WPKH (<a href="https://github.com/bitcoin/bips/blob/master/bip-0173.mediawiki">BIP-173</a>): bech32 witness
+ * version 0 program hash160(serP(K))</li>
+ * </ul>
+ * Every method works from a 20 byte hash160, either computed from a node or read out of a packed batch such as the one
+ * {@link ExtendedKeyPair#ckdPubHash160s(int, int, byte[], int)} produces.
+ * <p>
+ * An encoder owns its digests and scratch buffers and reuses them on every call, so an instance is not thread safe.
+ * Use one per thread.
+ */
+public class AddressEncoder {
+    public enum Type {
+        P2PKH,
+        P2SH_P2WPKH,
+        P2WPKH
+    }
+
+    /**
+     * Longest address any of the types can produce (a 42 character bech32 string).
+     */
+    public static final int MAX_LENGTH = 42;
+
+    private static final char[] BASE58 = "123456789ABCDEFGHJKLMNPQRSTUVWXYZabcdefghijkmnopqrstuvwxyz".toCharArray();
+    private static final char[] BECH32 = "qpzry9x8gf2tvdw0s3jn54khce6mua7l".toCharArray();
+    private static final int[] BECH32_GENERATOR = {0x3b6a57b2, 0x26508e6d, 0x1ea119fa, 0x3d4233dd, 0x2a1462b3};
+
+    private final boolean isMainnet;
+    private final byte p2pkhVersion;
+    private final byte p2shVersion;
+    private final char[] hrp;
+
+    private final SHA256Digest sha256 = new SHA256Digest();
+    private final RIPEMD160Digest ripemd160 = new RIPEMD160Digest();
+    private final byte[] digestScratch = new byte[32];
+    private final byte[] hash160 = new byte[20];
+    private final byte[] script = new byte[22];
+    private final byte[] payload = new byte[25];
+    private final byte[] base58Scratch = new byte[25];
+    private final byte[] bech32Data = new byte[33];
+    private final char[] chars = new char[MAX_LENGTH];
+
+    public AddressEncoder(boolean isMainnet) {
+        this.isMainnet = isMainnet;
+        this.p2pkhVersion = isMainnet ? (byte) 0x00 : (byte) 0x6f;
+        this.p2shVersion = isMainnet ? (byte) 0x05 : (byte) 0xc4;
+        this.hrp = (isMainnet ? "bc" : "tb").toCharArray();
+        script[0] = 0x00;
+        script[1] = 0x14;
+    }
+
+    public boolean isMainnet() {
+        return isMainnet;
+    }
+
+    public String encode(Type type, ExtendedKeyPair node) {
+        byte[] pubBytes = Bip32.serP(node.getPubKey());
+        Bip32.hash160(pubBytes, 0, pubBytes.length, sha256, ripemd160, digestScratch, hash160, 0);
+        return encode(type, hash160, 0);
+    }
+
+    /**
+     * Encodes the hash160 stored at hash160s[offset..offset+20).
+     */
+    public String encode(Type type, byte[] hash160s, int offset) {
+        int length = encodeTo(type, hash160s, offset, chars, 0);
+        return new String(chars, 0, length);
+    }
+
+    /**
+     * Encodes count packed hash160s into out[0..count).
+     */
+    public void encodeBatch(Type type, byte[] hash160s, int count, String[] out) {
+        for (int k = 0; k < count; k++) {
+            out[k] = encode(type, hash160s, k * 20);
+        }
+    }
+
+    public String[] encodeBatch(Type type, List<ExtendedKeyPair> nodes) {
+        String[] out = new String[nodes.size()];
+        for (int k = 0; k < out.length; k++) {
+            out[k] = encode(type, nodes.get(k));
+        }
+        return out;
+    }
+
+    /**
+     * Writes the address for the hash160 at hash160s[offset..offset+20) into dest starting at destOff, without
+     * allocating. dest needs room for {@link #MAX_LENGTH} characters.
+     *
+     * @return the number of characters written
+     */
+    public int encodeTo(Type type, byte[] hash160s, int offset, char[] dest, int destOff) {
+        switch (type) {
+            case P2PKH:
+                return base58Check(p2pkhVersion, hash160s, offset, dest, destOff);
+            case P2SH_P2WPKH:
+                System.arraycopy(hash160s, offset, script, 2, 20);
+                Bip32.hash160(script, 0, script.length, sha256, ripemd160, digestScratch, hash160, 0);
+                return base58Check(p2shVersion, hash160, 0, dest, destOff);
+            case P2WPKH:
+                return bech32(hash160s, offset, dest, destOff);
+            default:
+                throw new IllegalArgumentException("Unknown address type " + type);
+        }
+    }
+
+    private int base58Check(byte version, byte[] hash, int offset, char[] dest, int destOff) {
+        payload[0] = version;
+        System.arraycopy(hash, offset, payload, 1, 20);
+
+        sha256.update(payload, 0, 21);
+        sha256.doFinal(digestScratch, 0);
+        sha256.update(digestScratch, 0, 32);
+        sha256.doFinal(digestScratch, 0);
+        System.arraycopy(digestScratch, 0, payload, 21, 4);
+
+        return base58(payload, dest, destOff);
+    }
+
+    /**
+     * Base58 encodes the 25 byte payload by repeated division of a big endian base 256 number, as in bitcoind. Digits
+     * come out least significant first, so they're written from the end of the scratch char buffer and then copied.
+     */
+    private int base58(byte[] input, char[] dest, int destOff) {
+        byte[] number = base58Scratch;
+        System.arraycopy(input, 0, number, 0, input.length);
+
+        int zeros = 0;
+        while (zeros < number.length && number[zeros] == 0) {
+            zeros++;
+        }
+
+        int out = chars.length;
+        int start = zeros;
+        while (start < number.length) {
+            int remainder = 0;
+            for (int i = start; i < number.length; i++) {
+                int acc = (remainder << 8) | (number[i] & 0xff);
+                number[i] = (byte) (acc / 58);
+                remainder = acc % 58;
+            }
+            chars[--out] = BASE58[remainder];
+            if (number[start] == 0) {
+                start++;
+            }
+        }
+        while (out < chars.length && chars[out] == BASE58[0]) {
+            out++;
+        }
+        while (zeros-- > 0) {
+            chars[--out] = BASE58[0];
+        }
+
+        int length = chars.length - out;
+        System.arraycopy(chars, out, dest, destOff, length);
+        return length;
+    }
+
+    private int bech32(byte[] hash, int offset, char[] dest, int destOff) {
+        // witness version 0 followed by the 20 byte program regrouped into 5 bit values
+        bech32Data[0] = 0;
+        int acc = 0;
+        int bits = 0;
+        int n = 1;
+        for (int i = offset; i < offset + 20; i++) {
+            acc = (acc << 8) | (hash[i] & 0xff);
+            bits += 8;
+            while (bits >= 5) {
+                bits -= 5;
+                bech32Data[n++] = (byte) ((acc >>> bits) & 0x1f);
+            }
+        }
+
+        int chk = 1;
+        for (char c : hrp) {
+            chk = polymodStep(chk) ^ (c >>> 5);
+        }
+        chk = polymodStep(chk);
+        for (char c : hrp) {
+            chk = polymodStep(chk) ^ (c & 0x1f);
+        }
+        for (int i = 0; i < n; i++) {
+            chk = polymodStep(chk) ^ bech32Data[i];
+        }
+        for (int i = 0; i < 6; i++) {
+            chk = polymodStep(chk);
+        }
+        chk ^= 1;
+
+        int pos = destOff;
+        for (char c : hrp) {
+            dest[pos++] = c;
+        }
+        dest[pos++] = '1';
+        for (int i = 0; i < n; i++) {
+            dest[pos++] = BECH32[bech32Data[i]];
+        }
+        for (int i = 0; i < 6; i++) {
+            dest[pos++] = BECH32[(chk >>> (5 * (5 - i))) & 0x1f];
+        }
+        return pos - destOff;
+    }
+
+    private static int polymodStep(int chk) {
+        int top = chk >>> 25;
+        chk = (chk & 0x1ffffff) << 5;
+        for (int i = 0; i < 5; i++) {
+            if (((top >>> i) & 1) != 0) {
+                chk ^= BECH32_GENERATOR[i];
+            }
+        }
+        return chk;
+    }
+}
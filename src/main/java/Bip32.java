@@ -1,39 +1,62 @@
-import org.bouncycastle.asn1.sec.SECNamedCurves;
 import org.bouncycastle.asn1.x9.X9ECParameters;
+import org.bouncycastle.crypto.ec.CustomNamedCurves;
 import org.bouncycastle.crypto.digests.RIPEMD160Digest;
 import org.bouncycastle.crypto.digests.SHA256Digest;
 import org.bouncycastle.crypto.digests.SHA512Digest;
 import org.bouncycastle.crypto.macs.HMac;
+import org.bouncycastle.crypto.params.ECDomainParameters;
 import org.bouncycastle.crypto.params.KeyParameter;
-import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.math.ec.ECMultiplier;
 import org.bouncycastle.math.ec.ECPoint;
+import org.bouncycastle.math.ec.FixedPointCombMultiplier;
 
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
-import java.security.Security;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Contains static helper methods Named according to the recommendations at
  * <a href="https://github.com/bitcoin/bips/blob/master/bip-0032.mediawiki">BIP-32 Spec</a>
  */
 public class Bip32 {
-    static final X9ECParameters curve = SECNamedCurves.getByName("secp256k1");
+    /**
+     * The curve is set up on first use rather than when Bip32 is loaded. We only use BouncyCastle's lightweight API,
+     * so no JCE provider needs to be registered.
+     */
+    private static class Secp256k1 {
+        static final X9ECParameters params = CustomNamedCurves.getByName("secp256k1");
+        static final ECDomainParameters domain = new ECDomainParameters(
+                params.getCurve(), params.getG(), params.getN(), params.getH());
+        static final ECMultiplier multiplier = new FixedPointCombMultiplier();
+
+        static {
+            GeneratorTable.install(params.getG());
+        }
+    }
 
-    static {
-        Security.addProvider(new BouncyCastleProvider());
+    static X9ECParameters curve() {
+        return Secp256k1.params;
     }
 
+    /**
+     * The same parameters as {@link #curve()}, in the form BouncyCastle's signers take. Its G is the instance the
+     * precomputed table is installed on.
+     */
+    static ECDomainParameters domain() {
+        return Secp256k1.domain;
+    }
+
+    private static final byte[] MASTER_KEY_SALT = "Bitcoin seed".getBytes(StandardCharsets.US_ASCII);
+
     static ExtendedKeyPair generateMasterKey(byte[] seed) {
         return generateMasterKey(seed, true);
     }
 
     static ExtendedKeyPair generateMasterKey(byte[] seed, boolean isMainnet) {
         HMac hmac = new HMac(new SHA512Digest());
-        KeyParameter key = new KeyParameter("Bitcoin seed".getBytes());
+        KeyParameter key = new KeyParameter(MASTER_KEY_SALT);
         hmac.init(key);
-        for (byte b : seed) {
-            hmac.update(b);
-        }
+        hmac.update(seed, 0, seed.length);
         byte[] digest = new byte[64];
         hmac.doFinal(digest, 0);
         byte[] l = new byte[32];
@@ -50,19 +73,29 @@ public class Bip32 {
     }
 
     static byte[] hash160(ECPoint pubKey) {
-        SHA256Digest sha256 = new SHA256Digest();
-        RIPEMD160Digest ripemd160 = new RIPEMD160Digest();
+        byte[] ripemdOut = new byte[20];
+        hash160(pubKey, ripemdOut, 0);
+        return ripemdOut;
+    }
 
+    /**
+     * Writes RIPEMD160(SHA256(serP(pubKey))) into out at outOff.
+     */
+    static void hash160(ECPoint pubKey, byte[] out, int outOff) {
         byte[] pubBytes = pubKey.getEncoded(true);
-        sha256.update(pubBytes, 0, pubBytes.length);
-        byte[] sha256Out = new byte[32];
-        sha256.doFinal(sha256Out, 0);
-        ripemd160.update(sha256Out, 0, 32);
-
-        byte[] ripemdOut = new byte[20];
-        ripemd160.doFinal(ripemdOut, 0);
+        hash160(pubBytes, 0, pubBytes.length, new SHA256Digest(), new RIPEMD160Digest(), new byte[32], out, outOff);
+    }
 
-        return ripemdOut;
+    /**
+     * hash160 over an arbitrary byte range using caller supplied digests and a 32 byte scratch buffer, so that callers
+     * hashing many values can reuse them.
+     */
+    static void hash160(byte[] in, int inOff, int len, SHA256Digest sha256, RIPEMD160Digest ripemd160,
+                        byte[] scratch, byte[] out, int outOff) {
+        sha256.update(in, inOff, len);
+        sha256.doFinal(scratch, 0);
+        ripemd160.update(scratch, 0, 32);
+        ripemd160.doFinal(out, outOff);
     }
 
     /**
@@ -70,7 +103,7 @@ public class Bip32 {
      * group operation) of the secp256k1 base point with the integer p.
      */
     static ECPoint point(BigInteger p) {
-        return curve.getG().multiply(p);
+        return Secp256k1.multiplier.multiply(Secp256k1.params.getG(), p);
     }
 
     /**
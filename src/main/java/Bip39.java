@@ -0,0 +1,56 @@
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Mnemonic to seed conversion, as described in
+ * <a href="https://github.com/bitcoin/bips/blob/master/bip-0039.mediawiki">BIP-39</a>:
+ * seed = PBKDF2-HMAC-SHA512(password = NFKD(mnemonic), salt = "mnemonic" || NFKD(passphrase), 2048 iterations).
+ * <p>
+ * The mnemonic is not checked against a wordlist or checksum, matching the spec's note that any sentence can be
+ * turned into a seed.
+ */
+public class Bip39 {
+    static final int ITERATIONS = 2048;
+    static final int SEED_LENGTH = 64;
+
+    public static byte[] mnemonicToSeed(String mnemonic, String passphrase) {
+        byte[] seed = new byte[SEED_LENGTH];
+        mnemonicToSeed(new Pbkdf2(), mnemonic, passphrase, seed);
+        return seed;
+    }
+
+    /**
+     * Converts mnemonics.get(i) with passphrases.get(i) for every i, spreading the work over the common fork/join pool.
+     * The result is in input order. This is the shape of a recovery search, where every candidate costs a full
+     * 2048 iteration PBKDF2.
+     */
+    public static byte[][] mnemonicToSeeds(final List<String> mnemonics, final List<String> passphrases) {
+        if (mnemonics.size() != passphrases.size()) {
+            throw new IllegalArgumentException("Need exactly one passphrase per mnemonic");
+        }
+
+        final byte[][] seeds = new byte[mnemonics.size()][];
+        final ThreadLocal<Pbkdf2> pbkdf2 = ThreadLocal.withInitial(Pbkdf2::new);
+        IntStream.range(0, seeds.length)
+                .parallel()
+                .forEach(i -> {
+                    byte[] seed = new byte[SEED_LENGTH];
+                    mnemonicToSeed(pbkdf2.get(), mnemonics.get(i), passphrases.get(i), seed);
+                    seeds[i] = seed;
+                });
+        return seeds;
+    }
+
+    public static ExtendedKeyPair mnemonicToMasterKey(String mnemonic, String passphrase, boolean isMainnet) {
+        return Bip32.generateMasterKey(mnemonicToSeed(mnemonic, passphrase), isMainnet);
+    }
+
+    private static void mnemonicToSeed(Pbkdf2 pbkdf2, String mnemonic, String passphrase, byte[] seed) {
+        byte[] password = Normalizer.normalize(mnemonic, Normalizer.Form.NFKD).getBytes(StandardCharsets.UTF_8);
+        byte[] salt = Normalizer.normalize("mnemonic" + (passphrase == null ? "" : passphrase), Normalizer.Form.NFKD)
+                .getBytes(StandardCharsets.UTF_8);
+        pbkdf2.derive(password, salt, ITERATIONS, seed, 0);
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * A <a href="https://github.com/bitcoin/bips/blob/master/bip-0037.mediawiki">BIP-37</a> Bloom filter.
+ * <p>
+ * Sizing follows the spec: the filter gets -n ln(p) / ln(2)^2 bits for n elements at false positive rate p, capped at
+ * 36,000 bytes, and n ln(2) / bits hash functions, capped at 50. Hash function i is MurmurHash3 (x86, 32 bit) seeded
+ * with i * 0xFBA4C795 + tweak.
+ * <p>
+ * Elements are passed as slices of a caller's array, so inserting and testing don't allocate. Inserting beyond the
+ * element count the filter was sized for is allowed; the false positive rate just rises.
+ */
+public class BloomFilter {
+    public static final int MAX_FILTER_SIZE = 36000;
+    public static final int MAX_HASH_FUNCS = 50;
+
+    private static final double LN2 = Math.log(2);
+    private static final long SEED_MULTIPLIER = 0xFBA4C795L;
+
+    private final byte[] data;
+    private final int hashFuncs;
+    private final int tweak;
+
+    public BloomFilter(int elements, double falsePositiveRate, int tweak) {
+        int size = (int) (-1 / (LN2 * LN2) * Math.max(elements, 1) * Math.log(falsePositiveRate));
+        size = Math.max(1, Math.min(size, MAX_FILTER_SIZE * 8) / 8);
+        this.data = new byte[size];
+        int hashFuncs = (int) (data.length * 8 / (double) Math.max(elements, 1) * LN2);
+        this.hashFuncs = Math.max(1, Math.min(hashFuncs, MAX_HASH_FUNCS));
+        this.tweak = tweak;
+    }
+
+    public void insert(byte[] element) {
+        insert(element, 0, element.length);
+    }
+
+    public void insert(byte[] element, int off, int len) {
+        for (int i = 0; i < hashFuncs; i++) {
+            int bit = bitIndex(i, element, off, len);
+            data[bit >>> 3] |= (byte) (1 << (bit & 7));
+        }
+    }
+
+    public boolean contains(byte[] element) {
+        return contains(element, 0, element.length);
+    }
+
+    public boolean contains(byte[] element, int off, int len) {
+        for (int i = 0; i < hashFuncs; i++) {
+            int bit = bitIndex(i, element, off, len);
+            if ((data[bit >>> 3] & (1 << (bit & 7))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The raw filter bytes, as sent in a filterload message.
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    public int getHashFuncs() {
+        return hashFuncs;
+    }
+
+    public int getTweak() {
+        return tweak;
+    }
+
+    private int bitIndex(int hashNum, byte[] element, int off, int len) {
+        int seed = (int) (hashNum * SEED_MULTIPLIER + tweak);
+        return (int) ((murmur3(seed, element, off, len) & 0xffffffffL) % (data.length * 8L));
+    }
+
+    static int murmur3(int seed, byte[] data, int off, int len) {
+        final int c1 = 0xcc9e2d51;
+        final int c2 = 0x1b873593;
+
+        int h1 = seed;
+        int blocksEnd = off + (len & ~3);
+        for (int i = off; i < blocksEnd; i += 4) {
+            int k1 = (data[i] & 0xff)
+                    | ((data[i + 1] & 0xff) << 8)
+                    | ((data[i + 2] & 0xff) << 16)
+                    | ((data[i + 3] & 0xff) << 24);
+            k1 *= c1;
+            k1 = Integer.rotateLeft(k1, 15);
+            k1 *= c2;
+
+            h1 ^= k1;
+            h1 = Integer.rotateLeft(h1, 13);
+            h1 = h1 * 5 + 0xe6546b64;
+        }
+
+        int k1 = 0;
+        switch (len & 3) {
+            case 3:
+                k1 ^= (data[blocksEnd + 2] & 0xff) << 16;
+                // fall through
+            case 2:
+                k1 ^= (data[blocksEnd + 1] & 0xff) << 8;
+                // fall through
+            case 1:
+                k1 ^= data[blocksEnd] & 0xff;
+                k1 *= c1;
+                k1 = Integer.rotateLeft(k1, 15);
+                k1 *= c2;
+                h1 ^= k1;
+                break;
+            default:
+                break;
+        }
+
+        h1 ^= len;
+        h1 ^= h1 >>> 16;
+        h1 *= 0x85ebca6b;
+        h1 ^= h1 >>> 13;
+        h1 *= 0xc2b2ae35;
+        h1 ^= h1 >>> 16;
+        return h1;
+    }
+}
@@ -0,0 +1,510 @@
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Derives the public keys of many accounts in bulk, restartably.
+ * <p>
+ * The work (accounts x chains x index range) is cut into shards of at most shardSize consecutive indexes of one
+ * chain. Shards are numbered account first, then chain, then index, and every file the job writes lives in its
+ * directory:
+ * <ul>
+ * <li>shard-N.claim: held by the worker processing shard N and containing that worker's unique owner token. Claims
+ * are taken with an atomic create, so several processes can share one directory. The owner renews the claim's
+ * timestamp as it goes; a claim older than the lease is considered abandoned and may be taken over.</li>
+ * <li>shard-N.TOKEN.part: the output written so far by the owner with that token. Every owner writes its own file, so
+ * a paused owner whose claim was taken over can never interleave records with its successor.</li>
+ * <li>shard-N.ckpt: the token of a part file and the number of its records known to be on disk. A new owner copies
+ * that prefix into its own part file and carries on from there.</li>
+ * <li>shard-N.dat: the finished shard, renamed into place atomically.</li>
+ * </ul>
+ * An owner checks that the claim still holds its token before it renews the claim, writes a checkpoint, publishes the
+ * .dat file or deletes the claim. One that finds it has lost the claim discards its part file and moves on.
+ * Each record is {@link #RECORD_SIZE} bytes: ser32(account) || ser32(chain) || ser32(index) || serP(K), where K is the
+ * key at m/prefix/accountH/chain/index. Invalid keys (probability 2^(-127)) are written with an all zero serP(K).
+ * Because shards are concatenated in shard order by {@link #merge(OutputStream)}, the output doesn't depend on which
+ * worker ran which shard or how often the job was restarted.
+ */
+public class DerivationJob {
+    public static final int RECORD_SIZE = 4 + 4 + 4 + 33;
+
+    private final ExtendedKeyPair accountParent;
+    private final int firstAccount;
+    private final int accountCount;
+    private final int[] chains;
+    private final int firstIndex;
+    private final int indexCount;
+    private final int shardSize;
+    private final int checkpointInterval;
+    private final long leaseMillis;
+    private final Path directory;
+    private final List<Shard> shards;
+
+    /**
+     * A contiguous run of indexes on one chain of one account.
+     */
+    public static class Shard {
+        final int id;
+        final int account;
+        final int chain;
+        final int firstIndex;
+        final int count;
+
+        Shard(int id, int account, int chain, int firstIndex, int count) {
+            this.id = id;
+            this.account = account;
+            this.chain = chain;
+            this.firstIndex = firstIndex;
+            this.count = count;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public int getAccount() {
+            return account;
+        }
+
+        public int getChain() {
+            return chain;
+        }
+
+        public int getFirstIndex() {
+            return firstIndex;
+        }
+
+        public int getCount() {
+            return count;
+        }
+    }
+
+    DerivationJob(Builder builder) {
+        this.accountParent = builder.accountParent;
+        this.firstAccount = builder.firstAccount;
+        this.accountCount = builder.accountCount;
+        this.chains = builder.chains.clone();
+        this.firstIndex = builder.firstIndex;
+        this.indexCount = builder.indexCount;
+        this.shardSize = builder.shardSize;
+        this.checkpointInterval = builder.checkpointInterval;
+        this.leaseMillis = builder.leaseMillis;
+        this.directory = builder.directory;
+
+        List<Shard> shards = new ArrayList<>();
+        for (int a = 0; a < accountCount; a++) {
+            for (int chain : chains) {
+                for (int start = 0; start < indexCount; start += shardSize) {
+                    shards.add(new Shard(shards.size(), firstAccount + a, chain, firstIndex + start,
+                            Math.min(shardSize, indexCount - start)));
+                }
+            }
+        }
+        this.shards = Collections.unmodifiableList(shards);
+    }
+
+    public List<Shard> getShards() {
+        return shards;
+    }
+
+    /**
+     * Processes every shard that is neither finished nor claimed by a live worker, using the given number of threads.
+     * Returns once no more shards can be claimed. Shards held by other processes may still be running, so check
+     * {@link #isComplete()} before merging.
+     */
+    public void run(int threads) throws IOException, InterruptedException {
+        Files.createDirectories(directory);
+
+        final AtomicInteger cursor = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Void>> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                workers.add(executor.submit(() -> {
+                    int next;
+                    while ((next = cursor.getAndIncrement()) < shards.size()) {
+                        Shard shard = shards.get(next);
+                        if (isDone(shard)) {
+                            continue;
+                        }
+                        String token = claim(shard);
+                        if (token != null) {
+                            try {
+                                process(shard, token);
+                            } finally {
+                                release(shard, token);
+                            }
+                        }
+                    }
+                    return null;
+                }));
+            }
+
+            for (Future<Void> worker : workers) {
+                try {
+                    worker.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    }
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    throw new IllegalStateException(cause);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public boolean isComplete() {
+        for (Shard shard : shards) {
+            if (!isDone(shard)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes all shards, in shard order, to out.
+     */
+    public void merge(OutputStream out) throws IOException {
+        if (!isComplete()) {
+            throw new IllegalStateException("Cannot merge an incomplete job");
+        }
+        for (Shard shard : shards) {
+            Files.copy(file(shard, "dat"), out);
+        }
+        out.flush();
+    }
+
+    boolean isDone(Shard shard) {
+        return Files.exists(file(shard, "dat"));
+    }
+
+    /**
+     * Takes the claim on a shard and returns the new owner token, or null if the shard is held by a live worker. A
+     * stale claim is first moved aside under a unique name, so that when two workers race to take it over only one of
+     * them succeeds.
+     * <p>
+     * A shard can be published between the caller's {@link #isDone} check and the claim, after its checkpoint is gone,
+     * so the claim is checked against {@code isDone} again once taken, and given straight back rather than deriving the
+     * shard a second time from zero.
+     */
+    String claim(Shard shard) throws IOException {
+        Path claim = file(shard, "claim");
+        String token = UUID.randomUUID().toString();
+        if (createClaim(claim, token)) {
+            return checkNotDone(shard, token);
+        }
+
+        try {
+            long age = System.currentTimeMillis() - Files.getLastModifiedTime(claim).toMillis();
+            if (age < leaseMillis) {
+                return null;
+            }
+            Path abandoned = directory.resolve(claim.getFileName() + "." + UUID.randomUUID());
+            Files.move(claim, abandoned, StandardCopyOption.ATOMIC_MOVE);
+            Files.delete(abandoned);
+        } catch (NoSuchFileException e) {
+            // someone else released or took over the claim first
+            return null;
+        }
+        return createClaim(claim, token) ? checkNotDone(shard, token) : null;
+    }
+
+    private String checkNotDone(Shard shard, String token) throws IOException {
+        if (isDone(shard)) {
+            release(shard, token);
+            return null;
+        }
+        return token;
+    }
+
+    private static boolean createClaim(Path claim, String token) throws IOException {
+        try (FileChannel channel = FileChannel.open(claim, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(token.getBytes(StandardCharsets.US_ASCII)));
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            return false;
+        }
+    }
+
+    boolean holdsClaim(Shard shard, String token) throws IOException {
+        try {
+            byte[] holder = Files.readAllBytes(file(shard, "claim"));
+            return token.equals(new String(holder, StandardCharsets.US_ASCII));
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    void release(Shard shard, String token) throws IOException {
+        if (holdsClaim(shard, token)) {
+            Files.deleteIfExists(file(shard, "claim"));
+        }
+    }
+
+    private boolean renew(Shard shard, String token) throws IOException {
+        if (!holdsClaim(shard, token)) {
+            return false;
+        }
+        Files.setLastModifiedTime(file(shard, "claim"), FileTime.fromMillis(System.currentTimeMillis()));
+        return true;
+    }
+
+    /**
+     * Derives a shard as the owner of token. Returns false, leaving nothing behind, if the claim was lost on the way.
+     */
+    boolean process(Shard shard, String token) throws IOException {
+        Path part = part(shard, token);
+        Path checkpoint = file(shard, "ckpt");
+        Checkpoint previous = readCheckpoint(checkpoint);
+
+        ExtendedKeyPair chainNode = chainNode(shard.account, shard.chain);
+        byte[] record = new byte[RECORD_SIZE];
+        long renewEvery = Math.max(1, leaseMillis / 4);
+        boolean owned = true;
+        try (FileChannel channel = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            int done = previous == null ? 0 : copyCheckpointed(part(shard, previous.token), previous.records, channel);
+            channel.position((long) done * RECORD_SIZE);
+
+            long lastRenewal = System.currentTimeMillis();
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel));
+            for (int k = done; k < shard.count && owned; k++) {
+                int index = shard.firstIndex + k;
+                writeRecord(record, shard.account, shard.chain, index, chainNode == null ? null : chainNode.ckdPub(index));
+                out.write(record);
+
+                long now = System.currentTimeMillis();
+                if ((k + 1) % checkpointInterval == 0 && k + 1 < shard.count) {
+                    // the records must be durable before the checkpoint that vouches for them
+                    out.flush();
+                    channel.force(true);
+                    owned = renew(shard, token);
+                    if (owned) {
+                        writeCheckpoint(checkpoint, token, k + 1);
+                    }
+                    lastRenewal = now;
+                } else if (now - lastRenewal >= renewEvery) {
+                    owned = renew(shard, token);
+                    lastRenewal = now;
+                }
+            }
+            if (owned) {
+                out.flush();
+                channel.force(true);
+            }
+        }
+
+        if (!owned || !holdsClaim(shard, token)) {
+            Files.deleteIfExists(part);
+            return false;
+        }
+
+        Files.move(part, file(shard, "dat"), StandardCopyOption.ATOMIC_MOVE);
+        Files.deleteIfExists(checkpoint);
+        deleteOtherParts(shard);
+        return true;
+    }
+
+    /**
+     * Copies the records a checkpoint vouches for into out, and returns how many were copied. The part file may be
+     * shorter than the checkpoint claims, so only whole records that are actually there count.
+     */
+    private static int copyCheckpointed(Path source, int records, FileChannel out) throws IOException {
+        if (!Files.exists(source)) {
+            return 0;
+        }
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+            int done = (int) Math.min(records, in.size() / RECORD_SIZE);
+            long length = (long) done * RECORD_SIZE;
+            long copied = 0;
+            while (copied < length) {
+                copied += in.transferTo(copied, length - copied, out);
+            }
+            return done;
+        }
+    }
+
+    /**
+     * Removes part files left by earlier owners of a finished shard.
+     */
+    private void deleteOtherParts(Shard shard) throws IOException {
+        try (DirectoryStream<Path> parts = Files.newDirectoryStream(directory,
+                String.format("shard-%08d.*.part", shard.id))) {
+            for (Path stale : parts) {
+                try {
+                    Files.deleteIfExists(stale);
+                } catch (IOException e) {
+                    // still open by a paused owner on a platform that won't delete open files; it cleans up itself
+                }
+            }
+        }
+    }
+
+    private ExtendedKeyPair chainNode(int account, int chain) {
+        ExtendedKeyPair accountNode = accountParent.ckdPriv(account | 0x80000000);
+        if (accountNode == null) {
+            return null;
+        }
+        ExtendedKeyPair chainNode = accountNode.ckdPriv(chain);
+        return chainNode == null ? null : chainNode.neuter();
+    }
+
+    private static void writeRecord(byte[] record, int account, int chain, int index, ExtendedKeyPair child) {
+        System.arraycopy(Bip32.ser32(account), 0, record, 0, 4);
+        System.arraycopy(Bip32.ser32(chain), 0, record, 4, 4);
+        System.arraycopy(Bip32.ser32(index), 0, record, 8, 4);
+        if (child == null) {
+            Arrays.fill(record, 12, RECORD_SIZE, (byte) 0);
+        } else {
+            System.arraycopy(Bip32.serP(child.getPubKey()), 0, record, 12, 33);
+        }
+    }
+
+    private static class Checkpoint {
+        final String token;
+        final int records;
+
+        Checkpoint(String token, int records) {
+            this.token = token;
+            this.records = records;
+        }
+    }
+
+    private Checkpoint readCheckpoint(Path checkpoint) throws IOException {
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(checkpoint);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        String[] parts = new String(bytes, StandardCharsets.US_ASCII).trim().split(" ");
+        if (parts.length != 2) {
+            return null;
+        }
+        return new Checkpoint(parts[0], Integer.parseInt(parts[1]));
+    }
+
+    private void writeCheckpoint(Path checkpoint, String token, int records) throws IOException {
+        Path tmp = directory.resolve(checkpoint.getFileName() + "." + token + ".tmp");
+        Files.write(tmp, (token + " " + records).getBytes(StandardCharsets.US_ASCII));
+        Files.move(tmp, checkpoint, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    Path part(Shard shard, String token) {
+        return file(shard, token + ".part");
+    }
+
+    Path file(Shard shard, String extension) {
+        return directory.resolve(String.format("shard-%08d.%s", shard.id, extension));
+    }
+
+    public static class Builder {
+        ExtendedKeyPair accountParent;
+        int firstAccount;
+        int accountCount = 1;
+        int[] chains = {0, 1};
+        int firstIndex;
+        int indexCount;
+        int shardSize = 1000;
+        int checkpointInterval = 100;
+        long leaseMillis = 10 * 60 * 1000;
+        Path directory;
+
+        /**
+         * The private node accounts hang off, e.g. m/44H/0H. Account a is derived as its hardened child aH.
+         */
+        public Builder setAccountParent(ExtendedKeyPair accountParent) {
+            this.accountParent = accountParent;
+            return this;
+        }
+
+        public Builder setAccounts(int firstAccount, int accountCount) {
+            this.firstAccount = firstAccount;
+            this.accountCount = accountCount;
+            return this;
+        }
+
+        public Builder setChains(int... chains) {
+            this.chains = chains;
+            return this;
+        }
+
+        public Builder setIndexes(int firstIndex, int indexCount) {
+            this.firstIndex = firstIndex;
+            this.indexCount = indexCount;
+            return this;
+        }
+
+        public Builder setShardSize(int shardSize) {
+            this.shardSize = shardSize;
+            return this;
+        }
+
+        public Builder setCheckpointInterval(int checkpointInterval) {
+            this.checkpointInterval = checkpointInterval;
+            return this;
+        }
+
+        public Builder setLeaseMillis(long leaseMillis) {
+            this.leaseMillis = leaseMillis;
+            return this;
+        }
+
+        public Builder setDirectory(Path directory) {
+            this.directory = directory;
+            return this;
+        }
+
+        public DerivationJob build() {
+            if (accountParent == null || accountParent.getPrivKey() == null) {
+                throw new IllegalArgumentException("Accounts are hardened, so the account parent must be private");
+            }
+            if (directory == null) {
+                throw new IllegalArgumentException("A job directory is required");
+            }
+            if (firstAccount < 0 || accountCount < 0 || firstIndex < 0 || indexCount < 0
+                    || (long) firstAccount + accountCount > 0x80000000L
+                    || (long) firstIndex + indexCount > 0x80000000L) {
+                throw new IllegalArgumentException("Accounts and indexes must lie within the non-hardened range");
+            }
+            if (shardSize <= 0 || checkpointInterval <= 0) {
+                throw new IllegalArgumentException("Shard size and checkpoint interval must be positive");
+            }
+            for (int chain : chains) {
+                if (chain < 0) {
+                    throw new IllegalArgumentException("Chains must be non-hardened");
+                }
+            }
+            return new DerivationJob(this);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.ASN1Sequence;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.params.ECPrivateKeyParameters;
+import org.bouncycastle.crypto.params.ECPublicKeyParameters;
+import org.bouncycastle.crypto.signers.ECDSASigner;
+import org.bouncycastle.crypto.signers.HMacDSAKCalculator;
+import org.bouncycastle.math.ec.ECPoint;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Deterministic ECDSA over secp256k1 (<a href="https://tools.ietf.org/html/rfc6979">RFC 6979</a>, HMAC-SHA256 nonces)
+ * on {@link Bip32#domain()}, so signing reuses the library's curve and base point table rather than building new ones.
+ * <p>
+ * Signatures are DER encoded and normalized to low S as required by
+ * <a href="https://github.com/bitcoin/bips/blob/master/bip-0062.mediawiki">BIP-62</a>.
+ */
+class Ecdsa {
+    static final int DIGEST_LENGTH = 32;
+
+    static byte[] sign(BigInteger privKey, byte[] digest) {
+        checkDigest(digest);
+        ECDSASigner signer = new ECDSASigner(new HMacDSAKCalculator(new SHA256Digest()));
+        signer.init(true, new ECPrivateKeyParameters(privKey, Bip32.domain()));
+        BigInteger[] rs = signer.generateSignature(digest);
+
+        BigInteger n = Bip32.domain().getN();
+        BigInteger s = rs[1];
+        if (s.compareTo(n.shiftRight(1)) > 0) {
+            s = n.subtract(s);
+        }
+        return encodeDer(rs[0], s);
+    }
+
+    /**
+     * Returns false for signatures that don't verify and for anything that isn't a strict DER encoding.
+     */
+    static boolean verify(ECPoint pubKey, byte[] digest, byte[] signature) {
+        checkDigest(digest);
+        BigInteger[] rs = decodeDer(signature);
+        if (rs == null) {
+            return false;
+        }
+
+        ECDSASigner signer = new ECDSASigner();
+        signer.init(false, new ECPublicKeyParameters(pubKey, Bip32.domain()));
+        return signer.verifySignature(digest, rs[0], rs[1]);
+    }
+
+    /**
+     * ECDSASigner quietly truncates or pads whatever it's given, so a raw message passed in place of its hash would
+     * otherwise produce a valid looking signature over the wrong value.
+     */
+    private static void checkDigest(byte[] digest) {
+        if (digest.length != DIGEST_LENGTH) {
+            throw new IllegalArgumentException("Expected a " + DIGEST_LENGTH + " byte digest, got " + digest.length);
+        }
+    }
+
+    static byte[] encodeDer(BigInteger r, BigInteger s) {
+        try {
+            return new DERSequence(new ASN1Integer[]{new ASN1Integer(r), new ASN1Integer(s)})
+                    .getEncoded(ASN1Encoding.DER);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static BigInteger[] decodeDer(byte[] signature) {
+        try {
+            ASN1Primitive primitive = ASN1Primitive.fromByteArray(signature);
+            if (!(primitive instanceof ASN1Sequence)) {
+                return null;
+            }
+            ASN1Sequence sequence = (ASN1Sequence) primitive;
+            if (sequence.size() != 2
+                    || !(sequence.getObjectAt(0) instanceof ASN1Integer)
+                    || !(sequence.getObjectAt(1) instanceof ASN1Integer)) {
+                return null;
+            }
+            BigInteger r = ((ASN1Integer) sequence.getObjectAt(0)).getValue();
+            BigInteger s = ((ASN1Integer) sequence.getObjectAt(1)).getValue();
+
+            // reject BER and other malleable encodings
+            if (!Arrays.equals(signature, encodeDer(r, s))) {
+                return null;
+            }
+            return new BigInteger[]{r, s};
+        } catch (IOException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
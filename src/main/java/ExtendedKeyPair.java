@@ -8,6 +8,8 @@ import org.bouncycastle.math.ec.ECPoint;
 
 import java.math.BigInteger;
 import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
 
 public class ExtendedKeyPair {
     public static int private_testnet_version = 0x04358394;
@@ -28,6 +30,11 @@ public class ExtendedKeyPair {
     private final byte[] parentFingerprint;
     private final boolean isMainnet;
 
+    // Derived lazily and cached. Racing threads compute identical values, so publishing through volatile is enough.
+    private volatile byte[] fingerprint;
+    private volatile String serializedPub;
+    private volatile String serializedPriv;
+
     /**
      * Each account is composed of two keypair chains: an internal and an external one. The external keychain is used
      * to generate new public addresses, while the internal keychain is used for all other operations (change addresses,
@@ -102,7 +109,7 @@ public class ExtendedKeyPair {
             hmac.update(Bip32.ser256(privKey), 0, 32);
         } else {
             // non-hardened
-            byte[] data = Bip32.serP(Bip32.point(privKey));
+            byte[] data = Bip32.serP(pubKey);
             hmac.update(data, 0, data.length);
         }
 
@@ -119,8 +126,8 @@ public class ExtendedKeyPair {
 
         BigInteger parsediL = Bip32.parse256(iL);
 
-        BigInteger childPrivKey = parsediL.add(this.privKey).mod(Bip32.curve.getN());
-        if (parsediL.compareTo(Bip32.curve.getN()) >= 0 || childPrivKey.compareTo(BigInteger.ZERO) == 0) {
+        BigInteger childPrivKey = parsediL.add(this.privKey).mod(Bip32.curve().getN());
+        if (parsediL.compareTo(Bip32.curve().getN()) >= 0 || childPrivKey.compareTo(BigInteger.ZERO) == 0) {
             // key is invalid. happens with probability 2^(-127)
             return null;
         }
@@ -167,7 +174,7 @@ public class ExtendedKeyPair {
         BigInteger parsediL = Bip32.parse256(iL);
 
         ECPoint childPubKey = Bip32.point(parsediL).add(this.pubKey);
-        if (parsediL.compareTo(Bip32.curve.getN()) >= 0 || childPubKey.isInfinity()) {
+        if (parsediL.compareTo(Bip32.curve().getN()) >= 0 || childPubKey.isInfinity()) {
             // key is invalid. happens with probability 2^(-127)
             return null;
         }
@@ -182,6 +189,27 @@ public class ExtendedKeyPair {
                 .build();
     }
 
+    /**
+     * Derives the non-hardened children from..from+count-1 with ckdPub and writes their 20 byte hash160s back to back
+     * into out, starting at outOff. This is the compact form consumed by {@link AddressEncoder}. The slot of an invalid
+     * child (probability 2^(-127)) is left zeroed so that slot k always corresponds to index from+k.
+     */
+    public void ckdPubHash160s(int from, int count, byte[] out, int outOff) {
+        if (from < 0 || count < 0 || (long) from + count > 0x80000000L) {
+            throw new IllegalArgumentException("Range must lie within the non-hardened indexes");
+        }
+
+        for (int k = 0; k < count; k++) {
+            int off = outOff + k * 20;
+            ExtendedKeyPair child = ckdPub(from + k);
+            if (child == null) {
+                Arrays.fill(out, off, off + 20, (byte) 0);
+            } else {
+                Bip32.hash160(child.pubKey, out, off);
+            }
+        }
+    }
+
     /**
      * The function N((k, c)) -> (K, c) computes the extended public key corresponding to an extended private key
      * (the "neutered" version, as it removes the ability to sign transactions).
@@ -189,8 +217,9 @@ public class ExtendedKeyPair {
      * @return
      */
     public ExtendedKeyPair neuter() {
-        return new Builder()
-                .setPubKey(Bip32.point(privKey))
+        // K was already computed when this node was built, so share it along with the fingerprints and xpub
+        ExtendedKeyPair neutered = new Builder()
+                .setPubKey(pubKey)
                 .setChildNumber(childNumber)
                 .setDepth(depth)
                 .setIsMainnet(isMainnet)
@@ -198,6 +227,44 @@ public class ExtendedKeyPair {
                 .setParent(parent)
                 .setParentFingerprint(parentFingerprint)
                 .build();
+        neutered.fingerprint = fingerprint;
+        neutered.serializedPub = serializedPub;
+        return neutered;
+    }
+
+    /**
+     * Signs a 32 byte message digest with this node's private key using deterministic ECDSA (RFC 6979). Returns the DER
+     * encoded, low S signature. Throws IllegalArgumentException if digest isn't 32 bytes.
+     */
+    public byte[] sign(byte[] digest) {
+        if (privKey == null) {
+            throw new UnsupportedOperationException("Signing requires a private key.");
+        }
+        return Ecdsa.sign(privKey, digest);
+    }
+
+    /**
+     * Verifies a DER encoded signature over a 32 byte message digest against this node's public key. Throws
+     * IllegalArgumentException if digest isn't 32 bytes.
+     */
+    public boolean verify(byte[] digest, byte[] signature) {
+        return Ecdsa.verify(pubKey, digest, signature);
+    }
+
+    /**
+     * Signs digests.get(i) with keys.get(i) for every i, spreading the work over the common fork/join pool. The result
+     * is in input order.
+     */
+    public static byte[][] signBatch(final List<ExtendedKeyPair> keys, final List<byte[]> digests) {
+        if (keys.size() != digests.size()) {
+            throw new IllegalArgumentException("Need exactly one key per digest");
+        }
+
+        final byte[][] signatures = new byte[keys.size()][];
+        IntStream.range(0, signatures.length)
+                .parallel()
+                .forEach(i -> signatures[i] = keys.get(i).sign(digests.get(i)));
+        return signatures;
     }
 
     public static ExtendedKeyPair parseBase58Check(String base58Encoded) {
@@ -220,7 +287,7 @@ public class ExtendedKeyPair {
         ECPoint pubKey = null;
         BigInteger privKey = null;
         if (bytes[45] != 0) {
-            pubKey = Bip32.curve.getCurve().decodePoint(Arrays.copyOfRange(bytes, 45, 78));
+            pubKey = Bip32.curve().getCurve().decodePoint(Arrays.copyOfRange(bytes, 45, 78));
         } else {
             privKey = Bip32.parse256(Arrays.copyOfRange(bytes, 46, 78));
         }
@@ -239,83 +306,115 @@ public class ExtendedKeyPair {
     }
 
     public String serializePub() {
-        // version
-        int version = isMainnet ? public_mainnet_version : public_testnet_version;
-        int mask = 0xFF;
-        byte[] ser = new byte[82];
-        ser[3] = (byte) (mask & version);
-        ser[2] = (byte) (((mask << 8) & version) >>> 8);
-        ser[1] = (byte) (((mask << 16) & version) >>> 16);
-        ser[0] = (byte) (((mask << 24) & version) >>> 24);
-
-        // depth
-        ser[4] = (byte) depth;
+        String serialized = serializedPub;
+        if (serialized == null) {
+            serialized = encodePub();
+            serializedPub = serialized;
+        }
+        return serialized;
+    }
 
-        // parent parentFingerprint
-        byte[] fingerprint = parentFingerprint;
-        ser[5] = fingerprint[0];
-        ser[6] = fingerprint[1];
-        ser[7] = fingerprint[2];
-        ser[8] = fingerprint[3];
+    public String serializePriv() {
+        String serialized = serializedPriv;
+        if (serialized == null) {
+            serialized = encodePriv();
+            serializedPriv = serialized;
+        }
+        return serialized;
+    }
 
-        // child number
-        if (childNumber != null) {
-            ser[9] = childNumber[0];
-            ser[10] = childNumber[1];
-            ser[11] = childNumber[2];
-            ser[12] = childNumber[3];
+    /**
+     * Serializes the extended public and private keys together, building the shared header once and only patching
+     * the version for the private key.
+     *
+     * @return {xpub, xprv}
+     */
+    public String[] serializeBoth() {
+        requirePrivKey();
+        String pub = serializedPub;
+        String priv = serializedPriv;
+        if (pub == null || priv == null) {
+            byte[] ser = header(isMainnet ? public_mainnet_version : public_testnet_version);
+            byte[] privSer = ser.clone();
+            setVersion(privSer, isMainnet ? private_mainnet_version : private_testnet_version);
+            if (pub == null) {
+                pub = encodePub(ser);
+                serializedPub = pub;
+            }
+            if (priv == null) {
+                priv = encodePriv(privSer);
+                serializedPriv = priv;
+            }
         }
+        return new String[]{pub, priv};
+    }
 
-        // chain code
-        System.arraycopy(chainCode, 0, ser, 13, 32);
+    /**
+     * serializePub without the cache, for measuring the encoding itself.
+     */
+    String encodePub() {
+        return encodePub(header(isMainnet ? public_mainnet_version : public_testnet_version));
+    }
+
+    /**
+     * serializePriv without the cache, for measuring the encoding itself.
+     */
+    String encodePriv() {
+        requirePrivKey();
+        return encodePriv(header(isMainnet ? private_mainnet_version : private_testnet_version));
+    }
 
+    private String encodePub(byte[] ser) {
         byte[] keybytes = pubKey.getEncoded(true);
         System.arraycopy(keybytes, 0, ser, 45, 33);
+        return base58Check(ser);
+    }
 
-        byte[] checksum = Arrays.copyOfRange(
-                Sha256Hash.hashTwice(Arrays.copyOfRange(ser, 0, 78)), 0, 4);
-        System.arraycopy(checksum, 0, ser, 78, 4);
-        return Base58.encode(ser);
+    private String encodePriv(byte[] ser) {
+        // key
+        ser[45] = 0;
+        System.arraycopy(Bip32.ser256(privKey), 0, ser, 46, 32);
+        return base58Check(ser);
     }
 
-    public String serializePriv() {
-        // version
-        int version = isMainnet ? private_mainnet_version : private_testnet_version;
-        int mask = 0xFF;
+    private void requirePrivKey() {
+        if (privKey == null) {
+            throw new UnsupportedOperationException("Serializing an extended private key requires a private key.");
+        }
+    }
+
+    /**
+     * Fills in everything up to the key: version, depth, parent fingerprint, child number and chain code.
+     */
+    private byte[] header(int version) {
         byte[] ser = new byte[82];
-        ser[3] = (byte) (mask & version);
-        ser[2] = (byte) (((mask << 8) & version) >>> 8);
-        ser[1] = (byte) (((mask << 16) & version) >>> 16);
-        ser[0] = (byte) (((mask << 24) & version) >>> 24);
+        setVersion(ser, version);
 
         // depth
         ser[4] = (byte) depth;
 
-        // parent parentFingerprint
-        if (parent != null) {
-            byte[] fingerprint = parentFingerprint;
-            ser[5] = fingerprint[0];
-            ser[6] = fingerprint[1];
-            ser[7] = fingerprint[2];
-            ser[8] = fingerprint[3];
-        }
+        // parent fingerprint
+        System.arraycopy(parentFingerprint, 0, ser, 5, 4);
 
         // child number
         if (childNumber != null) {
-            ser[9] = childNumber[0];
-            ser[10] = childNumber[1];
-            ser[11] = childNumber[2];
-            ser[12] = childNumber[3];
+            System.arraycopy(childNumber, 0, ser, 9, 4);
         }
 
         // chain code
         System.arraycopy(chainCode, 0, ser, 13, 32);
+        return ser;
+    }
 
-        // key
-        System.arraycopy(Bip32.ser256(privKey), 0, ser, 46, 32);
+    private static void setVersion(byte[] ser, int version) {
+        ser[0] = (byte) (version >>> 24);
+        ser[1] = (byte) (version >>> 16);
+        ser[2] = (byte) (version >>> 8);
+        ser[3] = (byte) version;
+    }
 
-        byte[] checksum = Arrays.copyOfRange(
-                Sha256Hash.hashTwice(Arrays.copyOfRange(ser, 0, 78)), 0, 4);
+    private static String base58Check(byte[] ser) {
+        byte[] checksum = Sha256Hash.hashTwice(ser, 0, 78);
         System.arraycopy(checksum, 0, ser, 78, 4);
         return Base58.encode(ser);
     }
@@ -399,6 +498,10 @@ public class ExtendedKeyPair {
             return this;
         }
 
+        /**
+         * For private keys the public key is always computed from the private key. The parent fingerprint is taken
+         * from the parent (which caches it) unless one was supplied.
+         */
         public ExtendedKeyPair build() {
             assert chainCode != null;
             if (privKey != null) {
@@ -407,11 +510,8 @@ public class ExtendedKeyPair {
                 assert pubKey != null;
             }
 
-            if (parent != null) {
-                byte[] pubKeyHash = Bip32.hash160(parent.pubKey);
-                fingerprint = Arrays.copyOfRange(pubKeyHash, 0, 4);
-            } else {
-                fingerprint = new byte[]{0, 0, 0, 0};
+            if (fingerprint == null) {
+                fingerprint = parent != null ? parent.getFingerprint() : new byte[]{0, 0, 0, 0};
             }
 
             return new ExtendedKeyPair(this);
@@ -442,6 +542,18 @@ public class ExtendedKeyPair {
         return childNumber;
     }
 
+    /**
+     * The first 32 bits of hash160(serP(K)), which children record as their parent fingerprint.
+     */
+    public byte[] getFingerprint() {
+        byte[] fp = fingerprint;
+        if (fp == null) {
+            fp = Arrays.copyOfRange(Bip32.hash160(pubKey), 0, 4);
+            fingerprint = fp;
+        }
+        return fp;
+    }
+
     public byte[] getParentFingerprint() {
         return parentFingerprint;
     }
@@ -0,0 +1,167 @@
+import org.bouncycastle.math.ec.ECCurve;
+import org.bouncycastle.math.ec.ECPoint;
+import org.bouncycastle.math.ec.FixedPointCombMultiplier;
+import org.bouncycastle.math.ec.FixedPointPreCompInfo;
+import org.bouncycastle.math.ec.FixedPointUtil;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Loads and writes the fixed-point comb table BouncyCastle uses to multiply the secp256k1 base point.
+ * <p>
+ * BouncyCastle builds this table lazily on the first multiplication by G, which puts a few hundred point doublings
+ * and additions on the critical path of the first derivation after JVM start. Shipping the table as a resource lets
+ * us install it up front instead.
+ * <p>
+ * Resource layout (big endian): magic "B32G", int width, int point count, then the offset point followed by the comb
+ * points, each stored as the 64 byte affine x || y.
+ */
+class GeneratorTable {
+    static final String RESOURCE = "/secp256k1-g.table";
+
+    private static final int MAGIC = 0x42333247;
+    private static final int COORD_BYTES = 32;
+
+    /**
+     * A scalar to check a loaded table against, with bits spread over the whole width so the comb touches most of it.
+     */
+    private static final BigInteger CHECK_SCALAR =
+            new BigInteger("e8f32e723decf4051aedf3a8e9c1f4a0a4bf8d6a5d6c6b7e52c6b4e8c1a3b2f1", 16);
+
+    /**
+     * Installs the bundled table on G. Returns false if the resource is missing or does not match the curve, in which
+     * case BouncyCastle will build the table on first use as before.
+     */
+    static boolean install(ECPoint G) {
+        InputStream in = GeneratorTable.class.getResourceAsStream(RESOURCE);
+        if (in == null) {
+            return false;
+        }
+
+        try {
+            return install(G, in);
+        } finally {
+            try {
+                in.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    static boolean install(ECPoint G, InputStream in) {
+        try {
+            FixedPointPreCompInfo info = read(G.getCurve(), in);
+            if (info == null || !info.getPreComp()[0].equals(G) || !isValid(G, info)) {
+                return false;
+            }
+            G.getCurve().setPreCompInfo(G, FixedPointUtil.PRECOMP_NAME, info);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Checks that every point in the table is on the curve, then that a multiplication through the table on a scratch
+     * copy of G agrees with the default multiplier. A damaged or stale table would otherwise be installed and only
+     * fail (or give wrong keys) for the scalars that happen to use the bad entries.
+     */
+    private static boolean isValid(ECPoint G, FixedPointPreCompInfo info) {
+        if (!info.getOffset().isValid()) {
+            return false;
+        }
+        for (ECPoint p : info.getPreComp()) {
+            if (!p.isValid()) {
+                return false;
+            }
+        }
+
+        ECPoint normalized = G.normalize();
+        ECPoint scratch = G.getCurve().createPoint(normalized.getAffineXCoord().toBigInteger(),
+                normalized.getAffineYCoord().toBigInteger());
+        scratch.getCurve().setPreCompInfo(scratch, FixedPointUtil.PRECOMP_NAME, info);
+        try {
+            return new FixedPointCombMultiplier().multiply(scratch, CHECK_SCALAR).equals(G.multiply(CHECK_SCALAR));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    static FixedPointPreCompInfo read(ECCurve curve, InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC) {
+            return null;
+        }
+        int width = data.readInt();
+        int count = data.readInt();
+        if (width < 1 || count != 1 << width) {
+            return null;
+        }
+
+        // read the whole table in one shot, then slice it
+        byte[] raw = new byte[(count + 1) * 2 * COORD_BYTES];
+        data.readFully(raw);
+
+        ECPoint[] points = new ECPoint[count + 1];
+        for (int i = 0; i < points.length; i++) {
+            int off = i * 2 * COORD_BYTES;
+            BigInteger x = new BigInteger(1, Arrays.copyOfRange(raw, off, off + COORD_BYTES));
+            BigInteger y = new BigInteger(1, Arrays.copyOfRange(raw, off + COORD_BYTES, off + 2 * COORD_BYTES));
+            points[i] = curve.createPoint(x, y);
+        }
+
+        FixedPointPreCompInfo info = new FixedPointPreCompInfo();
+        info.setWidth(width);
+        info.setOffset(points[0]);
+        info.setPreComp(Arrays.copyOfRange(points, 1, points.length));
+        return info;
+    }
+
+    static void write(ECPoint G, OutputStream out) throws IOException {
+        // let BouncyCastle pick the width it will ask for at multiplication time
+        new FixedPointCombMultiplier().multiply(G, BigInteger.ONE);
+        FixedPointPreCompInfo info = FixedPointUtil.getFixedPointPreCompInfo(
+                G.getCurve().getPreCompInfo(G, FixedPointUtil.PRECOMP_NAME));
+
+        ECPoint[] preComp = info.getPreComp();
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(info.getWidth());
+        data.writeInt(preComp.length);
+        writePoint(data, info.getOffset());
+        for (ECPoint p : preComp) {
+            writePoint(data, p);
+        }
+        data.flush();
+    }
+
+    private static void writePoint(DataOutputStream data, ECPoint p) throws IOException {
+        ECPoint normalized = p.normalize();
+        if (normalized.isInfinity()) {
+            throw new IllegalStateException("Point at infinity cannot be stored in the generator table");
+        }
+        data.write(Bip32.ser256(normalized.getAffineXCoord().toBigInteger()));
+        data.write(Bip32.ser256(normalized.getAffineYCoord().toBigInteger()));
+    }
+
+    /**
+     * Regenerates the bundled resource: {@code java GeneratorTable src/main/resources/secp256k1-g.table}
+     */
+    public static void main(String[] args) throws IOException {
+        OutputStream out = new FileOutputStream(args[0]);
+        try {
+            // start from a fresh copy of G so we don't just write back whatever table is already installed
+            ECPoint G = Bip32.curve().getG().normalize();
+            write(G.getCurve().createPoint(G.getAffineXCoord().toBigInteger(), G.getAffineYCoord().toBigInteger()), out);
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,316 @@
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A Golomb-coded set as used by <a href="https://github.com/bitcoin/bips/blob/master/bip-0158.mediawiki">BIP-158</a>
+ * compact block filters.
+ * <p>
+ * Each of the N elements is hashed with SipHash-2-4 under a 128 bit key and mapped uniformly onto [0, N * M) by taking
+ * the high 64 bits of hash * N * M. The sorted values are stored as Golomb-Rice coded deltas with parameter P: the
+ * quotient delta >> P in unary (ones closed by a zero), then the low P bits, most significant bit first. The serialized
+ * form is CompactSize(N) followed by that bit stream.
+ * <p>
+ * Queries decode the stream in place and don't allocate. {@link #matchAny(long[], int)} walks the stream once for a
+ * whole sorted set of query values, which is how a wallet checks its watch set against a block filter (see
+ * {@link WatchSet#matchAny(GolombCodedSet)}).
+ */
+public class GolombCodedSet {
+    /**
+     * Parameters of BIP-158 basic filters.
+     */
+    public static final int BASIC_P = 19;
+    public static final long BASIC_M = 784931;
+
+    private final long k0;
+    private final long k1;
+    private final int p;
+    private final long m;
+    private final long n;
+    private final byte[] bits;
+
+    private GolombCodedSet(byte[] key, int p, long m, long n, byte[] bits) {
+        this.k0 = readLongLE(key, 0);
+        this.k1 = readLongLE(key, 8);
+        this.p = p;
+        this.m = m;
+        this.n = n;
+        this.bits = bits;
+    }
+
+    /**
+     * Builds a set over count elements of elementSize bytes, stored back to back in elements. As in BIP-158 the
+     * filter covers the distinct elements, so N counts each repeated element once.
+     *
+     * @param key the 16 byte SipHash key. For block filters this is the first 16 bytes of the block hash.
+     */
+    public static GolombCodedSet build(byte[] key, int p, long m, byte[] elements, int elementSize, int count) {
+        Set<ByteBuffer> distinct = new HashSet<>();
+        int[] offsets = new int[count];
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct.add(ByteBuffer.wrap(elements, i * elementSize, elementSize).slice())) {
+                offsets[n++] = i * elementSize;
+            }
+        }
+
+        // N feeds into the range, so it has to be known before hashing
+        GolombCodedSet empty = new GolombCodedSet(key, p, m, n, new byte[0]);
+        long[] values = new long[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = empty.hashToRange(elements, offsets[i], elementSize);
+        }
+        Arrays.sort(values);
+
+        BitWriter writer = new BitWriter();
+        long last = 0;
+        for (long value : values) {
+            long delta = value - last;
+            last = value;
+            for (long q = delta >>> p; q > 0; q--) {
+                writer.write(1);
+            }
+            writer.write(0);
+            for (int b = p - 1; b >= 0; b--) {
+                writer.write((int) (delta >>> b) & 1);
+            }
+        }
+        return new GolombCodedSet(key, p, m, n, writer.toByteArray());
+    }
+
+    /**
+     * Parses a serialized filter: CompactSize(N) followed by the Golomb-Rice bit stream. Filters come from peers, so a
+     * stream that ends before N values have been decoded is tolerated: queries simply stop at its end.
+     *
+     * @throws IllegalArgumentException if the input is empty or too short for its CompactSize header
+     */
+    public static GolombCodedSet parse(byte[] key, int p, long m, byte[] serialized) {
+        if (serialized == null || serialized.length == 0) {
+            throw new IllegalArgumentException("Empty filter");
+        }
+        int first = serialized[0] & 0xff;
+        int headerLength = first < 0xfd ? 1 : first == 0xfd ? 3 : first == 0xfe ? 5 : 9;
+        if (serialized.length < headerLength) {
+            throw new IllegalArgumentException("Filter is too short for its CompactSize header");
+        }
+        long n = headerLength == 1 ? first : readLE(serialized, 1, headerLength - 1);
+        if (n < 0) {
+            throw new IllegalArgumentException("Filter element count out of range");
+        }
+        return new GolombCodedSet(key, p, m, n, Arrays.copyOfRange(serialized, headerLength, serialized.length));
+    }
+
+    public byte[] serialize() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(9 + bits.length);
+        if (n < 0xfd) {
+            out.write((int) n);
+        } else if (n <= 0xffff) {
+            out.write(0xfd);
+            writeLE(out, n, 2);
+        } else if (n <= 0xffffffffL) {
+            out.write(0xfe);
+            writeLE(out, n, 4);
+        } else {
+            out.write(0xff);
+            writeLE(out, n, 8);
+        }
+        out.write(bits, 0, bits.length);
+        return out.toByteArray();
+    }
+
+    public long size() {
+        return n;
+    }
+
+    public boolean contains(byte[] element) {
+        return contains(element, 0, element.length);
+    }
+
+    public boolean contains(byte[] element, int off, int len) {
+        long target = hashToRange(element, off, len);
+
+        long value = 0;
+        long pos = 0;
+        long limit = bits.length * 8L;
+        for (long i = 0; i < n; i++) {
+            // quotient in unary, then p remainder bits; a stream shorter than N says just ends the search
+            while (true) {
+                if (pos >= limit) {
+                    return false;
+                }
+                if (bit(pos++) == 0) {
+                    break;
+                }
+                value += 1L << p;
+            }
+            if (limit - pos < p) {
+                return false;
+            }
+            long remainder = 0;
+            for (int b = 0; b < p; b++) {
+                remainder = (remainder << 1) | bit(pos++);
+            }
+            value += remainder;
+
+            if (value == target) {
+                return true;
+            }
+            if (Long.compareUnsigned(value, target) > 0) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if any of targets[0..count) is in the set. The targets must already be mapped with
+     * {@link #hashToRange(byte[], int, int)} and sorted as unsigned values.
+     */
+    public boolean matchAny(long[] targets, int count) {
+        if (count == 0) {
+            return false;
+        }
+
+        int t = 0;
+        long value = 0;
+        long pos = 0;
+        long limit = bits.length * 8L;
+        for (long i = 0; i < n; i++) {
+            while (true) {
+                if (pos >= limit) {
+                    return false;
+                }
+                if (bit(pos++) == 0) {
+                    break;
+                }
+                value += 1L << p;
+            }
+            if (limit - pos < p) {
+                return false;
+            }
+            long remainder = 0;
+            for (int b = 0; b < p; b++) {
+                remainder = (remainder << 1) | bit(pos++);
+            }
+            value += remainder;
+
+            while (Long.compareUnsigned(targets[t], value) < 0) {
+                if (++t == count) {
+                    return false;
+                }
+            }
+            if (targets[t] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * SipHash-2-4(key, element) mapped onto [0, N * M).
+     */
+    public long hashToRange(byte[] element, int off, int len) {
+        return multiplyHighUnsigned(sipHash(k0, k1, element, off, len), n * m);
+    }
+
+    private int bit(long pos) {
+        return (bits[(int) (pos >>> 3)] >>> (7 - (int) (pos & 7))) & 1;
+    }
+
+    static long multiplyHighUnsigned(long a, long b) {
+        long aLo = a & 0xffffffffL;
+        long aHi = a >>> 32;
+        long bLo = b & 0xffffffffL;
+        long bHi = b >>> 32;
+
+        long loLo = aLo * bLo;
+        long hiLo = aHi * bLo;
+        long loHi = aLo * bHi;
+        long hiHi = aHi * bHi;
+
+        long cross = (loLo >>> 32) + (hiLo & 0xffffffffL) + loHi;
+        return hiHi + (hiLo >>> 32) + (cross >>> 32);
+    }
+
+    static long sipHash(long k0, long k1, byte[] data, int off, int len) {
+        long v0 = 0x736f6d6570736575L ^ k0;
+        long v1 = 0x646f72616e646f6dL ^ k1;
+        long v2 = 0x6c7967656e657261L ^ k0;
+        long v3 = 0x7465646279746573L ^ k1;
+
+        int end = off + (len & ~7);
+        for (int i = off; i < end; i += 8) {
+            long mi = readLongLE(data, i);
+            v3 ^= mi;
+            for (int r = 0; r < 2; r++) {
+                v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+                v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+                v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+                v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+            }
+            v0 ^= mi;
+        }
+
+        long last = ((long) len & 0xff) << 56;
+        for (int i = 0; i < (len & 7); i++) {
+            last |= (data[end + i] & 0xffL) << (8 * i);
+        }
+        v3 ^= last;
+        for (int r = 0; r < 2; r++) {
+            v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+            v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+            v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+            v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+        }
+        v0 ^= last;
+
+        v2 ^= 0xff;
+        for (int r = 0; r < 4; r++) {
+            v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+            v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+            v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+            v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+        }
+        return v0 ^ v1 ^ v2 ^ v3;
+    }
+
+    private static long readLongLE(byte[] data, int off) {
+        return readLE(data, off, 8);
+    }
+
+    private static long readLE(byte[] data, int off, int length) {
+        long value = 0;
+        for (int i = length - 1; i >= 0; i--) {
+            value = (value << 8) | (data[off + i] & 0xff);
+        }
+        return value;
+    }
+
+    private static void writeLE(ByteArrayOutputStream out, long value, int length) {
+        for (int i = 0; i < length; i++) {
+            out.write((int) (value >>> (8 * i)));
+        }
+    }
+
+    private static class BitWriter {
+        private byte[] buffer = new byte[64];
+        private long pos;
+
+        void write(int bit) {
+            int index = (int) (pos >>> 3);
+            if (index == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            if (bit != 0) {
+                buffer[index] |= (byte) (0x80 >>> (int) (pos & 7));
+            }
+            pos++;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, (int) ((pos + 7) >>> 3));
+        }
+    }
+}
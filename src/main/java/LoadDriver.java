@@ -0,0 +1,403 @@
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a production-like mix of operations against the library at a fixed rate and records latency percentiles.
+ * <p>
+ * The driver is open loop: operation k of a thread is scheduled for start + k * interval and its latency is measured
+ * from that intended start, not from when the thread got round to it. When the library stalls, the operations queued
+ * up behind the stall are charged for the wait, which is what callers in a service would see. This corrects for
+ * coordinated omission.
+ * <p>
+ * Operations:
+ * <ul>
+ * <li>generate: masterKey.generate("m/44H/0H/xH/0/i") for random x and i</li>
+ * <li>ckdPubRange: ckdPub over a run of consecutive indexes on a random account's external chain</li>
+ * <li>parse: parseBase58Check of a random imported xpub or xprv</li>
+ * <li>import: parseBase58Check followed by serializePub, the round trip of importing a key</li>
+ * </ul>
+ * Usage:
+ * <pre>
+ * java LoadDriver --threads 8 --rate 2000 --duration 60 --warmup 10 \
+ *     --mix generate=50,ckdPubRange=30,parse=10,import=10 --out results.json
+ * </pre>
+ * Results are written as JSON to --out: latencies in microseconds, the achieved throughput next to the target rate,
+ * and how many scheduled operations completed or were dropped at the hard stop. Dropped operations are included in
+ * the latencies at the time they had waited when the run stopped.
+ */
+public class LoadDriver {
+    static final String[] OPERATIONS = {"generate", "ckdPubRange", "parse", "import"};
+
+    private final Config config;
+    private final ExtendedKeyPair masterKey;
+    private final ExtendedKeyPair[] externalChains;
+    private final String[] importedKeys;
+
+    static class Config {
+        int threads = Runtime.getRuntime().availableProcessors();
+        double rate = 1000;
+        double durationSeconds = 30;
+        double warmupSeconds = 5;
+        int accounts = 20;
+        int indexes = 1000;
+        int range = 20;
+        long seed = 1;
+        String out = "load-results.json";
+        Map<String, Integer> mix = new LinkedHashMap<>();
+
+        Config() {
+            mix.put("generate", 50);
+            mix.put("ckdPubRange", 30);
+            mix.put("parse", 10);
+            mix.put("import", 10);
+        }
+
+        static Config parse(String[] args) {
+            Config config = new Config();
+            for (int i = 0; i < args.length; i += 2) {
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + args[i]);
+                }
+                String value = args[i + 1];
+                switch (args[i]) {
+                    case "--threads":
+                        config.threads = Integer.parseInt(value);
+                        break;
+                    case "--rate":
+                        config.rate = Double.parseDouble(value);
+                        break;
+                    case "--duration":
+                        config.durationSeconds = Double.parseDouble(value);
+                        break;
+                    case "--warmup":
+                        config.warmupSeconds = Double.parseDouble(value);
+                        break;
+                    case "--accounts":
+                        config.accounts = Integer.parseInt(value);
+                        break;
+                    case "--indexes":
+                        config.indexes = Integer.parseInt(value);
+                        break;
+                    case "--range":
+                        config.range = Integer.parseInt(value);
+                        break;
+                    case "--seed":
+                        config.seed = Long.parseLong(value);
+                        break;
+                    case "--out":
+                        config.out = value;
+                        break;
+                    case "--mix":
+                        config.mix = parseMix(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+            if (config.threads < 1 || config.rate <= 0 || config.durationSeconds <= 0 || config.accounts < 1
+                    || config.indexes < 1 || config.range < 1) {
+                throw new IllegalArgumentException("threads, rate, duration, accounts, indexes and range must be positive");
+            }
+            return config;
+        }
+
+        static Map<String, Integer> parseMix(String value) {
+            Map<String, Integer> mix = new LinkedHashMap<>();
+            for (String part : value.split(",")) {
+                String[] kv = part.split("=");
+                if (kv.length != 2 || indexOf(kv[0].trim()) < 0) {
+                    throw new IllegalArgumentException("Bad mix entry " + part);
+                }
+                int weight = Integer.parseInt(kv[1].trim());
+                if (weight < 0) {
+                    throw new IllegalArgumentException("Negative weight in mix entry " + part);
+                }
+                mix.put(kv[0].trim(), weight);
+            }
+            return mix;
+        }
+    }
+
+    /**
+     * What a run produced. Operations scheduled inside the measured window either completed or were still pending
+     * when the run hit its hard stop at the end of the window (dropped). Both are recorded: a dropped operation counts
+     * with the time it had waited when the run stopped, a lower bound on its real latency, so a saturated run shows up
+     * in the tail instead of being left out of it.
+     */
+    static class Results {
+        final Map<String, LatencyHistogram> histograms;
+        final Map<String, Long> droppedByOperation;
+        final long scheduled;
+        final long dropped;
+        final double throughput;
+
+        Results(Map<String, LatencyHistogram> histograms, Map<String, Long> droppedByOperation, long scheduled,
+                long dropped, double throughput) {
+            this.histograms = histograms;
+            this.droppedByOperation = droppedByOperation;
+            this.scheduled = scheduled;
+            this.dropped = dropped;
+            this.throughput = throughput;
+        }
+
+        long getCompleted() {
+            return histograms.get("all").getCount() - dropped;
+        }
+    }
+
+    LoadDriver(Config config) {
+        this.config = config;
+        Random random = new Random(config.seed);
+        byte[] seed = new byte[32];
+        random.nextBytes(seed);
+        this.masterKey = Bip32.generateMasterKey(seed);
+
+        this.externalChains = new ExtendedKeyPair[config.accounts];
+        this.importedKeys = new String[config.accounts * 2];
+        for (int x = 0; x < config.accounts; x++) {
+            ExtendedKeyPair account = masterKey.generate("m/44H/0H/" + x + "H");
+            externalChains[x] = account.ckdPriv(0).neuter();
+            importedKeys[2 * x] = account.serializePub();
+            importedKeys[2 * x + 1] = account.serializePriv();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Config config = Config.parse(args);
+        Results results = new LoadDriver(config).run();
+        System.out.println(String.format(Locale.ROOT, "Wrote %s: %d operations, %.1f ops/s (target %.1f), %d dropped",
+                config.out, results.getCompleted(), results.throughput, config.rate, results.dropped));
+    }
+
+    /**
+     * Runs the configured load, writes the JSON report and returns the results. Histograms are keyed by operation name,
+     * plus "all".
+     * <p>
+     * The run stops hard at the end of the measured window: a saturated driver doesn't keep draining its backlog, it
+     * reports the operations it didn't get to as dropped, and records each of them with the time it had been waiting
+     * when the run stopped. Throughput is what actually completed, divided by the time
+     * from the start of the window to the last completion.
+     */
+    Results run() throws InterruptedException, IOException {
+        final int[] weights = new int[OPERATIONS.length];
+        int totalWeight = 0;
+        for (Map.Entry<String, Integer> entry : config.mix.entrySet()) {
+            weights[indexOf(entry.getKey())] = entry.getValue();
+            totalWeight += entry.getValue();
+        }
+        if (totalWeight <= 0) {
+            throw new IllegalArgumentException("The operation mix must have a positive total weight");
+        }
+
+        final long intervalNanos = Math.max(1, (long) (config.threads * 1e9 / config.rate));
+        final long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+        final long measureFrom = start + (long) (config.warmupSeconds * 1e9);
+        final long end = measureFrom + (long) (config.durationSeconds * 1e9);
+
+        final LatencyHistogram[][] histograms = new LatencyHistogram[config.threads][OPERATIONS.length];
+        final long[] scheduled = new long[config.threads];
+        final long[][] dropped = new long[config.threads][OPERATIONS.length];
+        final long[] completedCount = new long[config.threads];
+        final long[] lastCompletion = new long[config.threads];
+        List<Thread> threads = new ArrayList<>();
+        final int total = totalWeight;
+        for (int t = 0; t < config.threads; t++) {
+            final int threadIndex = t;
+            for (int op = 0; op < OPERATIONS.length; op++) {
+                histograms[t][op] = new LatencyHistogram();
+            }
+            Thread thread = new Thread(() -> {
+                Random random = new Random(config.seed * 31 + threadIndex);
+                // stagger threads so the aggregate schedule is evenly spaced
+                long first = start + threadIndex * intervalNanos / config.threads;
+                long firstMeasured = first + slotsBetween(first, measureFrom, intervalNanos) * intervalNanos;
+                scheduled[threadIndex] = slotsBetween(firstMeasured, end, intervalNanos);
+
+                long intended = first;
+                while (intended < end) {
+                    long now = System.nanoTime();
+                    if (now >= end) {
+                        // hard stop: whatever is still queued in the window is dropped, not drained, but it still
+                        // counts as having waited at least until now
+                        for (long slot = Math.max(intended, firstMeasured); slot < end; slot += intervalNanos) {
+                            int op = pick(random, weights, total);
+                            histograms[threadIndex][op].record(now - slot);
+                            dropped[threadIndex][op]++;
+                        }
+                        break;
+                    }
+                    if (intended > now) {
+                        LockSupport.parkNanos(intended - now);
+                        continue;
+                    }
+
+                    int op = pick(random, weights, total);
+                    execute(op, random);
+                    long completed = System.nanoTime();
+                    if (intended >= measureFrom) {
+                        histograms[threadIndex][op].record(completed - intended);
+                        completedCount[threadIndex]++;
+                        lastCompletion[threadIndex] = completed;
+                    }
+                    intended += intervalNanos;
+                }
+            }, "load-driver-" + t);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Map<String, LatencyHistogram> merged = new LinkedHashMap<>();
+        Map<String, Long> droppedByOperation = new LinkedHashMap<>();
+        LatencyHistogram all = new LatencyHistogram();
+        long totalDropped = 0;
+        for (int op = 0; op < OPERATIONS.length; op++) {
+            LatencyHistogram histogram = new LatencyHistogram();
+            long opDropped = 0;
+            for (int t = 0; t < config.threads; t++) {
+                histogram.add(histograms[t][op]);
+                opDropped += dropped[t][op];
+            }
+            merged.put(OPERATIONS[op], histogram);
+            droppedByOperation.put(OPERATIONS[op], opDropped);
+            all.add(histogram);
+            totalDropped += opDropped;
+        }
+        merged.put("all", all);
+        droppedByOperation.put("all", totalDropped);
+
+        long totalScheduled = 0;
+        long totalCompleted = 0;
+        long last = measureFrom;
+        for (int t = 0; t < config.threads; t++) {
+            totalScheduled += scheduled[t];
+            totalCompleted += completedCount[t];
+            last = Math.max(last, lastCompletion[t]);
+        }
+        double throughput = last > measureFrom ? totalCompleted / ((last - measureFrom) / 1e9) : 0;
+
+        Results results = new Results(merged, droppedByOperation, totalScheduled, totalDropped, throughput);
+        writeReport(results);
+        return results;
+    }
+
+    /**
+     * The number of schedule slots from, from + interval, ... that fall before to.
+     */
+    private static long slotsBetween(long from, long to, long interval) {
+        return from >= to ? 0 : (to - from + interval - 1) / interval;
+    }
+
+    private static int pick(Random random, int[] weights, int total) {
+        int r = random.nextInt(total);
+        for (int op = 0; op < weights.length; op++) {
+            r -= weights[op];
+            if (r < 0) {
+                return op;
+            }
+        }
+        return weights.length - 1;
+    }
+
+    private void execute(int op, Random random) {
+        switch (op) {
+            case 0:
+                masterKey.generate("m/44H/0H/" + random.nextInt(config.accounts) + "H/0/"
+                        + random.nextInt(config.indexes));
+                break;
+            case 1: {
+                ExtendedKeyPair chain = externalChains[random.nextInt(config.accounts)];
+                int from = random.nextInt(config.indexes);
+                for (int i = from; i < from + config.range; i++) {
+                    chain.ckdPub(i);
+                }
+                break;
+            }
+            case 2:
+                ExtendedKeyPair.parseBase58Check(importedKeys[random.nextInt(importedKeys.length)]);
+                break;
+            case 3:
+                ExtendedKeyPair.parseBase58Check(importedKeys[random.nextInt(importedKeys.length)]).serializePub();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown operation " + op);
+        }
+    }
+
+    private void writeReport(Results results) throws IOException {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"javaVersion\": \"").append(System.getProperty("java.version")).append("\",\n");
+        json.append("  \"availableProcessors\": ").append(Runtime.getRuntime().availableProcessors()).append(",\n");
+        json.append("  \"config\": {\n");
+        json.append("    \"threads\": ").append(config.threads).append(",\n");
+        json.append("    \"targetRate\": ").append(format(config.rate)).append(",\n");
+        json.append("    \"durationSeconds\": ").append(format(config.durationSeconds)).append(",\n");
+        json.append("    \"warmupSeconds\": ").append(format(config.warmupSeconds)).append(",\n");
+        json.append("    \"accounts\": ").append(config.accounts).append(",\n");
+        json.append("    \"indexes\": ").append(config.indexes).append(",\n");
+        json.append("    \"range\": ").append(config.range).append(",\n");
+        json.append("    \"seed\": ").append(config.seed).append(",\n");
+        json.append("    \"mix\": {");
+        boolean first = true;
+        for (Map.Entry<String, Integer> entry : config.mix.entrySet()) {
+            json.append(first ? "" : ", ").append('"').append(entry.getKey()).append("\": ").append(entry.getValue());
+            first = false;
+        }
+        json.append("}\n");
+        json.append("  },\n");
+        json.append("  \"targetRate\": ").append(format(config.rate)).append(",\n");
+        json.append("  \"throughput\": ").append(format(results.throughput)).append(",\n");
+        json.append("  \"scheduled\": ").append(results.scheduled).append(",\n");
+        json.append("  \"completed\": ").append(results.getCompleted()).append(",\n");
+        json.append("  \"dropped\": ").append(results.dropped).append(",\n");
+        json.append("  \"latencyMicros\": {\n");
+        first = true;
+        for (Map.Entry<String, LatencyHistogram> entry : results.histograms.entrySet()) {
+            LatencyHistogram h = entry.getValue();
+            json.append(first ? "" : ",\n");
+            json.append("    \"").append(entry.getKey()).append("\": {")
+                    .append("\"count\": ").append(h.getCount())
+                    .append(", \"dropped\": ").append(results.droppedByOperation.get(entry.getKey()))
+                    .append(", \"mean\": ").append(format(h.getMean() / 1e3))
+                    .append(", \"p50\": ").append(format(h.getValueAtPercentile(50) / 1e3))
+                    .append(", \"p99\": ").append(format(h.getValueAtPercentile(99) / 1e3))
+                    .append(", \"p99.9\": ").append(format(h.getValueAtPercentile(99.9) / 1e3))
+                    .append(", \"max\": ").append(format(h.getMax() / 1e3))
+                    .append("}");
+            first = false;
+        }
+        json.append("\n  }\n");
+        json.append("}\n");
+
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(config.out), StandardCharsets.UTF_8)) {
+            writer.write(json.toString());
+        }
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    static int indexOf(String operation) {
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            if (OPERATIONS[i].equals(operation)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,80 @@
+import org.bouncycastle.crypto.digests.SHA512Digest;
+import org.bouncycastle.util.Memoable;
+
+/**
+ * PBKDF2-HMAC-SHA512 (<a href="https://tools.ietf.org/html/rfc8018#section-5.2">RFC 8018</a>) for a single 64 byte
+ * output block, which is all BIP-39 needs.
+ * <p>
+ * HMAC(K, m) = H((K ^ opad) || H((K ^ ipad) || m)). Both padded key blocks are absorbed once per password and the
+ * resulting SHA-512 midstates are restored before every iteration, so each of the iterations costs exactly the two
+ * compression calls over the 64 byte U value and allocates nothing. An instance reuses its digests and buffers and is
+ * not thread safe.
+ */
+class Pbkdf2 {
+    private static final int BLOCK_SIZE = 128;
+    private static final int OUTPUT_SIZE = 64;
+
+    private final SHA512Digest inner = new SHA512Digest();
+    private final SHA512Digest outer = new SHA512Digest();
+    private final byte[] pad = new byte[BLOCK_SIZE];
+    private final byte[] u = new byte[OUTPUT_SIZE];
+    private final byte[] innerOut = new byte[OUTPUT_SIZE];
+    private final byte[] blockIndex = {0, 0, 0, 1};
+
+    /**
+     * Derives 64 bytes into out[outOff..outOff+64).
+     */
+    void derive(byte[] password, byte[] salt, int iterations, byte[] out, int outOff) {
+        if (iterations < 1) {
+            throw new IllegalArgumentException("At least one iteration is required");
+        }
+
+        // keys longer than the block size are hashed first
+        byte[] key = password;
+        int keyLength = password.length;
+        if (keyLength > BLOCK_SIZE) {
+            inner.reset();
+            inner.update(password, 0, password.length);
+            inner.doFinal(innerOut, 0);
+            key = innerOut;
+            keyLength = OUTPUT_SIZE;
+        }
+
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            pad[i] = (byte) ((i < keyLength ? key[i] : 0) ^ 0x36);
+        }
+        inner.reset();
+        inner.update(pad, 0, BLOCK_SIZE);
+        Memoable innerState = inner.copy();
+
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            pad[i] ^= 0x36 ^ 0x5c;
+        }
+        outer.reset();
+        outer.update(pad, 0, BLOCK_SIZE);
+        Memoable outerState = outer.copy();
+
+        // U1 = PRF(P, S || INT(1))
+        inner.update(salt, 0, salt.length);
+        inner.update(blockIndex, 0, blockIndex.length);
+        inner.doFinal(innerOut, 0);
+        outer.update(innerOut, 0, OUTPUT_SIZE);
+        outer.doFinal(u, 0);
+        System.arraycopy(u, 0, out, outOff, OUTPUT_SIZE);
+
+        // Uj = PRF(P, Uj-1), T = U1 ^ U2 ^ ... ^ Uc
+        for (int j = 1; j < iterations; j++) {
+            inner.reset(innerState);
+            inner.update(u, 0, OUTPUT_SIZE);
+            inner.doFinal(innerOut, 0);
+
+            outer.reset(outerState);
+            outer.update(innerOut, 0, OUTPUT_SIZE);
+            outer.doFinal(u, 0);
+
+            for (int i = 0; i < OUTPUT_SIZE; i++) {
+                out[outOff + i] ^= u[i];
+            }
+        }
+    }
+}
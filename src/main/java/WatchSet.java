@@ -0,0 +1,242 @@
+import org.bouncycastle.crypto.digests.RIPEMD160Digest;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The set of items a light client watches for, filled straight from range derivation and turned into BIP-37 Bloom
+ * filters or matched against BIP-158 Golomb-coded sets.
+ * <p>
+ * Items are kept packed back to back in one growable array, in the form chosen by {@link Element}, so no per key nodes
+ * or strings are kept around. As the gap window grows, {@link #addRange(ExtendedKeyPair, int, int)} appends the new
+ * keys and also inserts them into every attached Bloom filter, so an existing filter extends in place.
+ * <p>
+ * Not thread safe.
+ */
+public class WatchSet {
+    /**
+     * What is stored for each key K.
+     */
+    public enum Element {
+        /**
+         * serP(K), 33 bytes.
+         */
+        PUBKEY(33),
+        /**
+         * hash160(serP(K)), 20 bytes.
+         */
+        HASH160(20),
+        /**
+         * OP_DUP OP_HASH160 &lt;hash160&gt; OP_EQUALVERIFY OP_CHECKSIG, 25 bytes.
+         */
+        P2PKH_SCRIPT(25),
+        /**
+         * OP_HASH160 &lt;hash160(0x00 0x14 || hash160)&gt; OP_EQUAL, 23 bytes.
+         */
+        P2SH_P2WPKH_SCRIPT(23),
+        /**
+         * OP_0 &lt;hash160&gt;, 22 bytes.
+         */
+        P2WPKH_SCRIPT(22);
+
+        final int size;
+
+        Element(int size) {
+            this.size = size;
+        }
+
+        public int getSize() {
+            return size;
+        }
+    }
+
+    private final Element element;
+    private final List<BloomFilter> attached = new ArrayList<>();
+
+    private byte[] items;
+    private int count;
+
+    // scratch space for deriving and hashing
+    private final SHA256Digest sha256 = new SHA256Digest();
+    private final RIPEMD160Digest ripemd160 = new RIPEMD160Digest();
+    private final byte[] digestScratch = new byte[32];
+    private final byte[] script = new byte[22];
+    private final byte[] hash160 = new byte[20];
+    private byte[] hash160s = new byte[0];
+
+    // reused by matchAny
+    private long[] targets = new long[0];
+
+    public WatchSet(Element element) {
+        this(element, 64);
+    }
+
+    public WatchSet(Element element, int expectedCount) {
+        this.element = element;
+        this.items = new byte[Math.max(expectedCount, 1) * element.size];
+    }
+
+    public Element getElement() {
+        return element;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Copies item i into dest at destOff.
+     */
+    public void get(int i, byte[] dest, int destOff) {
+        System.arraycopy(items, i * element.size, dest, destOff, element.size);
+    }
+
+    /**
+     * Derives the non-hardened children from..from+count-1 of chain with ckdPub and adds them. Invalid children
+     * (probability 2^(-127)) are skipped.
+     */
+    public void addRange(ExtendedKeyPair chain, int from, int count) {
+        if (element == Element.PUBKEY) {
+            for (int k = 0; k < count; k++) {
+                ExtendedKeyPair child = chain.ckdPub(from + k);
+                if (child != null) {
+                    addPubKey(Bip32.serP(child.getPubKey()), 0);
+                }
+            }
+            return;
+        }
+
+        if (hash160s.length < count * 20) {
+            hash160s = new byte[count * 20];
+        }
+        chain.ckdPubHash160s(from, count, hash160s, 0);
+        for (int k = 0; k < count; k++) {
+            if (!isZero(hash160s, k * 20, 20)) {
+                addHash160(hash160s, k * 20);
+            }
+        }
+    }
+
+    /**
+     * Adds a key given as its 33 byte serP(K) at pubKey[off..off+33).
+     */
+    public void addPubKey(byte[] pubKey, int off) {
+        if (element == Element.PUBKEY) {
+            add(pubKey, off);
+        } else {
+            Bip32.hash160(pubKey, off, 33, sha256, ripemd160, digestScratch, hash160, 0);
+            addHash160(hash160, 0);
+        }
+    }
+
+    /**
+     * Adds a key given as its 20 byte hash160 at hash160[off..off+20), e.g. one slot of the output of
+     * {@link ExtendedKeyPair#ckdPubHash160s(int, int, byte[], int)}.
+     */
+    public void addHash160(byte[] hash160, int off) {
+        int at = reserve();
+        switch (element) {
+            case HASH160:
+                System.arraycopy(hash160, off, items, at, 20);
+                break;
+            case P2PKH_SCRIPT:
+                items[at] = 0x76;
+                items[at + 1] = (byte) 0xa9;
+                items[at + 2] = 0x14;
+                System.arraycopy(hash160, off, items, at + 3, 20);
+                items[at + 23] = (byte) 0x88;
+                items[at + 24] = (byte) 0xac;
+                break;
+            case P2SH_P2WPKH_SCRIPT:
+                script[0] = 0x00;
+                script[1] = 0x14;
+                System.arraycopy(hash160, off, script, 2, 20);
+                items[at] = (byte) 0xa9;
+                items[at + 1] = 0x14;
+                Bip32.hash160(script, 0, 22, sha256, ripemd160, digestScratch, items, at + 2);
+                items[at + 22] = (byte) 0x87;
+                break;
+            case P2WPKH_SCRIPT:
+                items[at] = 0x00;
+                items[at + 1] = 0x14;
+                System.arraycopy(hash160, off, items, at + 2, 20);
+                break;
+            default:
+                throw new UnsupportedOperationException("A hash160 cannot be turned into " + element);
+        }
+        inserted(at);
+    }
+
+    private void add(byte[] item, int off) {
+        int at = reserve();
+        System.arraycopy(item, off, items, at, element.size);
+        inserted(at);
+    }
+
+    private int reserve() {
+        int at = count * element.size;
+        if (at + element.size > items.length) {
+            items = Arrays.copyOf(items, Math.max(items.length * 2, at + element.size));
+        }
+        count++;
+        return at;
+    }
+
+    private void inserted(int at) {
+        for (BloomFilter filter : attached) {
+            filter.insert(items, at, element.size);
+        }
+    }
+
+    /**
+     * Builds a Bloom filter sized for the current items plus headroom more, fills it and attaches it so later
+     * additions are inserted too.
+     */
+    public BloomFilter toBloomFilter(int headroom, double falsePositiveRate, int tweak) {
+        BloomFilter filter = new BloomFilter(count + headroom, falsePositiveRate, tweak);
+        for (int i = 0; i < count; i++) {
+            filter.insert(items, i * element.size, element.size);
+        }
+        attached.add(filter);
+        return filter;
+    }
+
+    public void detach(BloomFilter filter) {
+        attached.remove(filter);
+    }
+
+    public GolombCodedSet toGolombCodedSet(byte[] key, int p, long m) {
+        return GolombCodedSet.build(key, p, m, items, element.size, count);
+    }
+
+    /**
+     * Whether any watched item is in filter. Each item is mapped into the filter's range and the sorted values are
+     * merged against the filter in one pass. The value buffer is reused across calls, so once it has grown to the
+     * size of the set this doesn't allocate.
+     */
+    public boolean matchAny(GolombCodedSet filter) {
+        if (targets.length < count) {
+            targets = new long[Math.max(count, targets.length * 2)];
+        }
+        for (int i = 0; i < count; i++) {
+            // flip the sign bit so a signed sort gives unsigned order
+            targets[i] = filter.hashToRange(items, i * element.size, element.size) ^ Long.MIN_VALUE;
+        }
+        Arrays.sort(targets, 0, count);
+        for (int i = 0; i < count; i++) {
+            targets[i] ^= Long.MIN_VALUE;
+        }
+        return filter.matchAny(targets, count);
+    }
+
+    private static boolean isZero(byte[] data, int off, int len) {
+        for (int i = off; i < off + len; i++) {
+            if (data[i] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
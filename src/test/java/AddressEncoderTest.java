@@ -0,0 +1,102 @@
+import org.bitcoinj.core.Address;
+import org.bitcoinj.params.MainNetParams;
+import org.bitcoinj.params.TestNet3Params;
+import org.bouncycastle.crypto.digests.RIPEMD160Digest;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.util.encoders.Hex;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class AddressEncoderTest {
+    // hash160 of the compressed encoding of the generator, i.e. private key 1
+    private static final byte[] G_HASH160 = Hex.decode("751e76e8199196d454941c45d1b3a323f1433bd6");
+
+    @Test
+    public void testP2pkh() {
+        AddressEncoder mainnet = new AddressEncoder(true);
+        assertEquals("1BgGZ9tcN4rm9KBzDn7KprQz87SZ26SAMH", mainnet.encode(AddressEncoder.Type.P2PKH, G_HASH160, 0));
+
+        AddressEncoder testnet = new AddressEncoder(false);
+        assertEquals(new Address(TestNet3Params.get(), G_HASH160).toBase58(),
+                testnet.encode(AddressEncoder.Type.P2PKH, G_HASH160, 0));
+    }
+
+    @Test
+    public void testP2pkhLeadingZeros() {
+        byte[] zeros = new byte[20];
+        assertEquals("1111111111111111111114oLvT2", new AddressEncoder(true).encode(AddressEncoder.Type.P2PKH, zeros, 0));
+    }
+
+    @Test
+    public void testP2shP2wpkh() {
+        assertEquals("3JvL6Ymt8MVWiCNHC7oWU6nLeHNJKLZGLN",
+                new AddressEncoder(true).encode(AddressEncoder.Type.P2SH_P2WPKH, G_HASH160, 0));
+
+        byte[] script = new byte[22];
+        script[1] = 0x14;
+        System.arraycopy(G_HASH160, 0, script, 2, 20);
+        byte[] scriptHash = new byte[20];
+        Bip32.hash160(script, 0, script.length, new SHA256Digest(), new RIPEMD160Digest(),
+                new byte[32], scriptHash, 0);
+        assertEquals(Address.fromP2SHHash(TestNet3Params.get(), scriptHash).toBase58(),
+                new AddressEncoder(false).encode(AddressEncoder.Type.P2SH_P2WPKH, G_HASH160, 0));
+    }
+
+    @Test
+    public void testP2wpkh() {
+        // BIP-173 test vectors
+        assertEquals("bc1qw508d6qejxtdg4y5r3zarvary0c5xw7kv8f3t4",
+                new AddressEncoder(true).encode(AddressEncoder.Type.P2WPKH, G_HASH160, 0));
+        assertEquals("tb1qw508d6qejxtdg4y5r3zarvary0c5xw7kxpjzsx",
+                new AddressEncoder(false).encode(AddressEncoder.Type.P2WPKH, G_HASH160, 0));
+    }
+
+    @Test
+    public void testEncodeNode() {
+        ExtendedKeyPair masterKey = Bip32.generateMasterKey(Hex.decode("000102030405060708090a0b0c0d0e0f"));
+        AddressEncoder encoder = new AddressEncoder(true);
+        assertEquals("15mKKb2eos1hWa6tisdPwwDC1a5J1y9nma", encoder.encode(AddressEncoder.Type.P2PKH, masterKey));
+
+        ExtendedKeyPair one = new ExtendedKeyPair.Builder()
+                .setPrivKey(BigInteger.ONE)
+                .setChainCode(new byte[32])
+                .build();
+        assertEquals("bc1qw508d6qejxtdg4y5r3zarvary0c5xw7kv8f3t4", encoder.encode(AddressEncoder.Type.P2WPKH, one));
+    }
+
+    @Test
+    public void testBatchMatchesSingle() {
+        ExtendedKeyPair chain = Bip32.generateMasterKey(Hex.decode("000102030405060708090a0b0c0d0e0f"))
+                .generate("m/0H/0").neuter();
+        int count = 8;
+        byte[] hash160s = new byte[count * 20];
+        chain.ckdPubHash160s(0, count, hash160s, 0);
+
+        List<ExtendedKeyPair> nodes = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            nodes.add(chain.ckdPub(i));
+            assertArrayEquals(Bip32.hash160(nodes.get(i).getPubKey()),
+                    Arrays.copyOfRange(hash160s, i * 20, i * 20 + 20));
+        }
+
+        AddressEncoder encoder = new AddressEncoder(true);
+        for (AddressEncoder.Type type : AddressEncoder.Type.values()) {
+            String[] fromHashes = new String[count];
+            encoder.encodeBatch(type, hash160s, count, fromHashes);
+            String[] fromNodes = encoder.encodeBatch(type, nodes);
+            assertArrayEquals(fromNodes, fromHashes);
+        }
+
+        String[] legacy = encoder.encodeBatch(AddressEncoder.Type.P2PKH, nodes);
+        for (int i = 0; i < count; i++) {
+            assertEquals(new Address(MainNetParams.get(), Bip32.hash160(nodes.get(i).getPubKey())).toBase58(), legacy[i]);
+        }
+    }
+}
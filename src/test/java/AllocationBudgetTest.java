@@ -0,0 +1,104 @@
+import org.bouncycastle.util.encoders.Hex;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Fails when a hot path allocates more per operation than its committed budget.
+ * <p>
+ * Bytes are counted with {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)} around a loop of
+ * operations on the current thread, after a warmup so the JIT has settled. Budgets carry some headroom over the
+ * measured figure so that JVM differences don't make the suite flaky; tighten them when an operation gets cheaper.
+ */
+public class AllocationBudgetTest {
+    private static final int WARMUP = 2000;
+    private static final int ITERATIONS = 2000;
+
+    // bytes per operation
+    private static final long CKD_PRIV_BUDGET = 138_000;
+    private static final long CKD_PUB_BUDGET = 144_000;
+    private static final long SERIALIZE_PUB_BUDGET = 2_800;
+    private static final long SERIALIZE_PRIV_BUDGET = 1_900;
+    // serialization is memoized per node, so repeated calls should allocate nothing
+    private static final long SERIALIZE_CACHED_BUDGET = 64;
+    private static final long PARSE_BASE58_CHECK_BUDGET = 132_000;
+
+    private com.sun.management.ThreadMXBean threads;
+    private ExtendedKeyPair priv;
+    private ExtendedKeyPair pub;
+    private String xprv;
+
+    // keeps results reachable so the JIT can't drop the work being measured
+    private Object sink;
+
+    @Before
+    public void setup() {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        ExtendedKeyPair masterKey = Bip32.generateMasterKey(Hex.decode("000102030405060708090a0b0c0d0e0f"));
+        priv = masterKey.generate("m/0H/1");
+        pub = priv.neuter();
+        xprv = priv.serializePriv();
+    }
+
+    private interface Operation {
+        Object run(int i);
+    }
+
+    private long bytesPerOperation(Operation operation) {
+        for (int i = 0; i < WARMUP; i++) {
+            sink = operation.run(i);
+        }
+
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink = operation.run(i);
+        }
+        long after = threads.getThreadAllocatedBytes(thread);
+        return (after - before) / ITERATIONS;
+    }
+
+    private void assertWithinBudget(String name, long budget, Operation operation) {
+        long bytes = bytesPerOperation(operation);
+        assertTrue(name + " allocated " + bytes + " bytes/op, budget is " + budget, bytes <= budget);
+    }
+
+    @Test
+    public void testCkdPriv() {
+        assertWithinBudget("ckdPriv", CKD_PRIV_BUDGET, i -> priv.ckdPriv(i));
+    }
+
+    @Test
+    public void testCkdPub() {
+        assertWithinBudget("ckdPub", CKD_PUB_BUDGET, i -> pub.ckdPub(i));
+    }
+
+    @Test
+    public void testSerializePub() {
+        assertWithinBudget("serializePub", SERIALIZE_PUB_BUDGET, i -> pub.encodePub());
+    }
+
+    @Test
+    public void testSerializePriv() {
+        assertWithinBudget("serializePriv", SERIALIZE_PRIV_BUDGET, i -> priv.encodePriv());
+    }
+
+    @Test
+    public void testSerializeCached() {
+        assertWithinBudget("serializePub (cached)", SERIALIZE_CACHED_BUDGET, i -> pub.serializePub());
+        assertWithinBudget("serializePriv (cached)", SERIALIZE_CACHED_BUDGET, i -> priv.serializePriv());
+    }
+
+    @Test
+    public void testParseBase58Check() {
+        assertWithinBudget("parseBase58Check", PARSE_BASE58_CHECK_BUDGET, i -> ExtendedKeyPair.parseBase58Check(xprv));
+    }
+}
@@ -6,6 +6,8 @@ import java.math.BigInteger;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 public class Bip32Test {
     private Bip32 bip32;
@@ -83,6 +85,59 @@ public class Bip32Test {
         assertEquals(base58PublicKey, extendedPublicKey.serializePub());
     }
 
+    @Test
+    public void testParseChildKey() {
+        // m/0H/1 from test vector 1, which has a non-zero parent fingerprint
+        String base58PrivateKey = "xprv9wTYmMFdV23N2TdNG573QoEsfRrWKQgWeibmLntzniatZvR9BmLnvSxqu53Kw1UmYPxLgboyZQaXwTCg8MSY3H2EU4pWcQDnRnrVA1xe8fs";
+        String base58PublicKey = "xpub6ASuArnXKPbfEwhqN6e3mwBcDTgzisQN1wXN9BJcM47sSikHjJf3UFHKkNAWbWMiGj7Wf5uMash7SyYq527Hqck2AxYysAA7xmALppuCkwQ";
+        ExtendedKeyPair extendedPrivateKey = ExtendedKeyPair.parseBase58Check(base58PrivateKey);
+
+        assertEquals(base58PrivateKey, extendedPrivateKey.serializePriv());
+        assertEquals(base58PublicKey, extendedPrivateKey.serializePub());
+        assertEquals(base58PublicKey, ExtendedKeyPair.parseBase58Check(base58PublicKey).serializePub());
+    }
+
+    @Test
+    public void testNeuterSharesDerivedState() {
+        ExtendedKeyPair masterKey = Bip32.generateMasterKey(Hex.decode("000102030405060708090a0b0c0d0e0f"));
+        ExtendedKeyPair child = masterKey.generate("m/0H/1");
+        String xpub = child.serializePub();
+
+        ExtendedKeyPair neutered = child.neuter();
+        assertSame(child.getPubKey(), neutered.getPubKey());
+        assertSame(child.getParentFingerprint(), neutered.getParentFingerprint());
+        assertSame(child.getParent().getFingerprint(), child.getParentFingerprint());
+        assertSame(xpub, neutered.serializePub());
+    }
+
+    @Test
+    public void testSerializeBoth() {
+        ExtendedKeyPair masterKey = Bip32.generateMasterKey(Hex.decode("000102030405060708090a0b0c0d0e0f"));
+        ExtendedKeyPair child = masterKey.generate("m/0H/1/2H");
+
+        String[] both = child.serializeBoth();
+        assertEquals("xpub6D4BDPcP2GT577Vvch3R8wDkScZWzQzMMUm3PWbmWvVJrZwQY4VUNgqFJPMM3No2dFDFGTsxxpG5uJh7n7epu4trkrX7x7DogT5Uv6fcLW5", both[0]);
+        assertEquals("xprv9z4pot5VBttmtdRTWfWQmoH1taj2axGVzFqSb8C9xaxKymcFzXBDptWmT7FwuEzG3ryjH4ktypQSAewRiNMjANTtpgP4mLTj34bhnZX7UiM", both[1]);
+        assertSame(both[0], child.serializePub());
+        assertSame(both[1], child.serializePriv());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testSerializeBothRequiresPrivateKey() {
+        ExtendedKeyPair masterKey = Bip32.generateMasterKey(Hex.decode("000102030405060708090a0b0c0d0e0f"));
+        masterKey.neuter().serializeBoth();
+    }
+
+    @Test
+    public void testBuildDerivesPubKeyFromPrivKey() {
+        ExtendedKeyPair one = new ExtendedKeyPair.Builder()
+                .setPrivKey(BigInteger.ONE)
+                .setPubKey(Bip32.point(BigInteger.valueOf(2)))
+                .setChainCode(new byte[32])
+                .build();
+        assertTrue(Bip32.point(BigInteger.ONE).equals(one.getPubKey()));
+    }
+
     @Test
     public void testParseIndex() {
         ExtendedKeyPair e = Bip32.generateMasterKey(new byte[]{});
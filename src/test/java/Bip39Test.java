@@ -0,0 +1,68 @@
+import org.bouncycastle.crypto.digests.SHA512Digest;
+import org.bouncycastle.crypto.generators.PKCS5S2ParametersGenerator;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.util.encoders.Hex;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class Bip39Test {
+    private static final String MNEMONIC =
+            "abandon abandon abandon abandon abandon abandon abandon abandon abandon abandon abandon about";
+
+    @Test
+    public void testVector() {
+        // first entry of the BIP-39 reference vectors
+        byte[] seed = Bip39.mnemonicToSeed(MNEMONIC, "TREZOR");
+        assertEquals("c55257c360c07c72029aebc1b53c05ed0362ada38ead3e3e9efa3708e53495531f09a6987599d18264c1e1c92f2cf141630c7a3c4ab7c81b2f001698e7463b04",
+                Hex.toHexString(seed));
+        assertEquals("xprv9s21ZrQH143K3h3fDYiay8mocZ3afhfULfb5GX8kCBdno77K4HiA15Tg23wpbeF1pLfs1c5SPmYHrEpTuuRhxMwvKDwqdKiGJS9XFKzUsAF",
+                Bip39.mnemonicToMasterKey(MNEMONIC, "TREZOR", true).serializePriv());
+    }
+
+    @Test
+    public void testPbkdf2MatchesReference() {
+        Random random = new Random(42);
+        Pbkdf2 pbkdf2 = new Pbkdf2();
+        // covers short keys, a key of exactly one block and keys that have to be hashed first
+        for (int length : new int[]{0, 1, 64, 127, 128, 129, 300}) {
+            byte[] password = new byte[length];
+            byte[] salt = new byte[random.nextInt(40)];
+            random.nextBytes(password);
+            random.nextBytes(salt);
+            for (int iterations : new int[]{1, 2, 17}) {
+                PKCS5S2ParametersGenerator generator = new PKCS5S2ParametersGenerator(new SHA512Digest());
+                generator.init(password, salt, iterations);
+                byte[] expected = ((KeyParameter) generator.generateDerivedParameters(512)).getKey();
+
+                byte[] actual = new byte[64];
+                pbkdf2.derive(password, salt, iterations, actual, 0);
+                assertArrayEquals(expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void testBatch() {
+        List<String> mnemonics = new ArrayList<>();
+        List<String> passphrases = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            mnemonics.add(MNEMONIC);
+            passphrases.add("candidate " + i);
+        }
+        passphrases.set(5, "TREZOR");
+
+        byte[][] seeds = Bip39.mnemonicToSeeds(mnemonics, passphrases);
+        for (int i = 0; i < seeds.length; i++) {
+            assertArrayEquals(Bip39.mnemonicToSeed(mnemonics.get(i), passphrases.get(i)), seeds[i]);
+        }
+        assertArrayEquals(Bip39.mnemonicToSeed(MNEMONIC, "TREZOR"), seeds[5]);
+        assertEquals(8, Arrays.asList(seeds).stream().map(Hex::toHexString).distinct().count());
+    }
+}
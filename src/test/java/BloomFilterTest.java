@@ -0,0 +1,65 @@
+import org.bitcoinj.core.Utils;
+import org.bouncycastle.util.encoders.Hex;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BloomFilterTest {
+
+    @Test
+    public void testBip37Example() {
+        // the filter from bitcoin core's bloom_create_insert_serialize test
+        BloomFilter filter = new BloomFilter(3, 0.01, 0);
+        filter.insert(Hex.decode("99108ad8ed9bb6274d3980bab5a85c048f0950c8"));
+        assertTrue(filter.contains(Hex.decode("99108ad8ed9bb6274d3980bab5a85c048f0950c8")));
+        assertFalse(filter.contains(Hex.decode("19108ad8ed9bb6274d3980bab5a85c048f0950c8")));
+        filter.insert(Hex.decode("b5a2c786d9ef4658287ced5914b37a1b4aa32eee"));
+        filter.insert(Hex.decode("b9300670b4c5366e95b2699e8b18bc75e5f729c5"));
+
+        assertEquals("614e9b", Hex.toHexString(filter.getData()));
+        assertEquals(5, filter.getHashFuncs());
+    }
+
+    @Test
+    public void testMatchesBitcoinj() {
+        Random random = new Random(7);
+        BloomFilter filter = new BloomFilter(100, 0.001, 0x12345678);
+        org.bitcoinj.core.BloomFilter reference = new org.bitcoinj.core.BloomFilter(100, 0.001, 0x12345678);
+
+        byte[] slab = new byte[100 * 33 + 5];
+        random.nextBytes(slab);
+        for (int i = 0; i < 100; i++) {
+            filter.insert(slab, 5 + i * 33, 33);
+            reference.insert(Arrays.copyOfRange(slab, 5 + i * 33, 5 + i * 33 + 33));
+        }
+
+        // bitcoinj serializes as varint(length) || data || nHashFuncs || nTweak || nFlags
+        byte[] serialized = reference.bitcoinSerialize();
+        int length = filter.getData().length;
+        assertEquals(length, serialized.length - 9 - (length < 0xfd ? 1 : 3));
+        int dataStart = serialized.length - 9 - length;
+        assertArrayEquals(Arrays.copyOfRange(serialized, dataStart, dataStart + length), filter.getData());
+        assertEquals(Utils.readUint32(serialized, dataStart + length), filter.getHashFuncs());
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(filter.contains(slab, 5 + i * 33, 33));
+        }
+    }
+
+    @Test
+    public void testMurmur3() {
+        // reference values for MurmurHash3_x86_32
+        assertEquals(0, BloomFilter.murmur3(0, new byte[0], 0, 0));
+        assertEquals(0x514E28B7, BloomFilter.murmur3(1, new byte[0], 0, 0));
+        assertEquals(0x81F16F39, BloomFilter.murmur3(0xFFFFFFFF, new byte[0], 0, 0));
+        assertEquals(0x76293B50, BloomFilter.murmur3(0, Hex.decode("ffffffff"), 0, 4));
+        assertEquals(0xF55B516B, BloomFilter.murmur3(0, Hex.decode("21436587"), 0, 4));
+        assertEquals(0x7E4A8634, BloomFilter.murmur3(0, Hex.decode("214365"), 0, 3));
+    }
+}
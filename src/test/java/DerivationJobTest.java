@@ -0,0 +1,211 @@
+import org.bouncycastle.util.encoders.Hex;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DerivationJobTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ExtendedKeyPair accountParent;
+
+    @Before
+    public void setup() {
+        ExtendedKeyPair masterKey = Bip32.generateMasterKey(Hex.decode("000102030405060708090a0b0c0d0e0f"));
+        accountParent = masterKey.generate("m/44H/0H");
+    }
+
+    private DerivationJob job(Path directory) {
+        return new DerivationJob.Builder()
+                .setAccountParent(accountParent)
+                .setAccounts(0, 2)
+                .setChains(0, 1)
+                .setIndexes(5, 10)
+                .setShardSize(4)
+                .setCheckpointInterval(2)
+                .setDirectory(directory)
+                .build();
+    }
+
+    private byte[] expected() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int account = 0; account < 2; account++) {
+            for (int chain = 0; chain < 2; chain++) {
+                ExtendedKeyPair chainNode = accountParent.ckdPriv(account | 0x80000000).ckdPriv(chain);
+                for (int index = 5; index < 15; index++) {
+                    out.write(Bip32.ser32(account), 0, 4);
+                    out.write(Bip32.ser32(chain), 0, 4);
+                    out.write(Bip32.ser32(index), 0, 4);
+                    out.write(Bip32.serP(chainNode.ckdPriv(index).getPubKey()), 0, 33);
+                }
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] merge(DerivationJob job) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        job.merge(out);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testShards() {
+        DerivationJob job = job(folder.getRoot().toPath());
+        // 2 accounts x 2 chains x ceil(10 / 4) shards
+        assertEquals(12, job.getShards().size());
+        DerivationJob.Shard last = job.getShards().get(11);
+        assertEquals(1, last.getAccount());
+        assertEquals(1, last.getChain());
+        assertEquals(13, last.getFirstIndex());
+        assertEquals(2, last.getCount());
+    }
+
+    @Test
+    public void testOutputIndependentOfThreads() throws Exception {
+        DerivationJob single = job(folder.newFolder("single").toPath());
+        single.run(1);
+        DerivationJob multi = job(folder.newFolder("multi").toPath());
+        multi.run(4);
+
+        assertTrue(single.isComplete());
+        assertTrue(multi.isComplete());
+        assertArrayEquals(expected(), merge(single));
+        assertArrayEquals(expected(), merge(multi));
+    }
+
+    @Test
+    public void testResume() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        DerivationJob job = job(directory);
+        job.run(2);
+        byte[] expected = merge(job);
+
+        // lose one shard entirely, and leave another half written with a torn record past its checkpoint
+        DerivationJob.Shard lost = job.getShards().get(3);
+        Files.delete(job.file(lost, "dat"));
+
+        DerivationJob.Shard partial = job.getShards().get(6);
+        byte[] finished = Files.readAllBytes(job.file(partial, "dat"));
+        Files.delete(job.file(partial, "dat"));
+        byte[] torn = Arrays.copyOf(finished, 2 * DerivationJob.RECORD_SIZE + 7);
+        torn[torn.length - 1] ^= 0x55;
+        Files.write(job.part(partial, "crashed"), torn);
+        Files.write(job.file(partial, "ckpt"), "crashed 2".getBytes(StandardCharsets.US_ASCII));
+        assertFalse(job.isComplete());
+
+        DerivationJob resumed = job(directory);
+        resumed.run(3);
+        assertTrue(resumed.isComplete());
+        assertArrayEquals(expected, merge(resumed));
+        assertFalse(Files.exists(job.file(partial, "ckpt")));
+        assertFalse(Files.exists(job.part(partial, "crashed")));
+    }
+
+    @Test
+    public void testResumeWithShortPart() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        DerivationJob job = job(directory);
+        job.run(2);
+        byte[] expected = merge(job);
+
+        // the checkpoint says 3 records, but only 1 made it to disk
+        DerivationJob.Shard shard = job.getShards().get(0);
+        byte[] finished = Files.readAllBytes(job.file(shard, "dat"));
+        Files.delete(job.file(shard, "dat"));
+        Files.write(job.part(shard, "crashed"), Arrays.copyOf(finished, DerivationJob.RECORD_SIZE));
+        Files.write(job.file(shard, "ckpt"), "crashed 3".getBytes(StandardCharsets.US_ASCII));
+
+        job.run(1);
+        assertTrue(job.isComplete());
+        assertArrayEquals(finished, Files.readAllBytes(job.file(shard, "dat")));
+        assertArrayEquals(expected, merge(job));
+    }
+
+    @Test
+    public void testLostClaimIsFenced() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        DerivationJob job = job(directory);
+        Files.createDirectories(directory);
+
+        DerivationJob.Shard shard = job.getShards().get(0);
+        String token = job.claim(shard);
+        assertTrue(job.holdsClaim(shard, token));
+
+        // another worker takes the claim over while the first one is paused
+        Files.write(job.file(shard, "claim"), "successor".getBytes(StandardCharsets.US_ASCII));
+        assertFalse(job.holdsClaim(shard, token));
+
+        assertFalse(job.process(shard, token));
+        job.release(shard, token);
+
+        assertFalse(job.isDone(shard));
+        assertFalse(Files.exists(job.part(shard, token)));
+        assertFalse(Files.exists(job.file(shard, "ckpt")));
+        assertEquals("successor", new String(Files.readAllBytes(job.file(shard, "claim")), StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void testClaims() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        DerivationJob job = job(directory);
+        Files.createDirectories(directory);
+
+        // a live claim held by another worker is left alone
+        DerivationJob.Shard held = job.getShards().get(0);
+        Files.createFile(job.file(held, "claim"));
+
+        // an abandoned claim is taken over
+        DerivationJob.Shard abandoned = job.getShards().get(1);
+        Files.createFile(job.file(abandoned, "claim"));
+        Files.setLastModifiedTime(job.file(abandoned, "claim"), FileTime.fromMillis(0));
+
+        job.run(2);
+        assertFalse(job.isDone(held));
+        assertTrue(job.isDone(abandoned));
+        assertFalse(job.isComplete());
+
+        Files.delete(job.file(held, "claim"));
+        job.run(2);
+        assertTrue(job.isComplete());
+        assertArrayEquals(expected(), merge(job));
+    }
+
+    @Test
+    public void testClaimOfPublishedShard() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        DerivationJob job = job(directory);
+        Files.createDirectories(directory);
+
+        // another process publishes the shard after this worker's isDone check but before its claim
+        DerivationJob.Shard shard = job.getShards().get(0);
+        Files.write(job.file(shard, "dat"), new byte[]{1, 2, 3});
+
+        assertNull(job.claim(shard));
+        assertFalse(Files.exists(job.file(shard, "claim")));
+        assertArrayEquals(new byte[]{1, 2, 3}, Files.readAllBytes(job.file(shard, "dat")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAccountRangeOverflow() {
+        new DerivationJob.Builder()
+                .setAccountParent(accountParent)
+                .setAccounts(Integer.MAX_VALUE, 2)
+                .setDirectory(folder.getRoot().toPath())
+                .build();
+    }
+}
@@ -0,0 +1,97 @@
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.Sha256Hash;
+import org.bouncycastle.util.encoders.Hex;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class EcdsaTest {
+    private ExtendedKeyPair chain;
+
+    @Before
+    public void setup() {
+        chain = Bip32.generateMasterKey(Hex.decode("000102030405060708090a0b0c0d0e0f")).generate("m/0H/1");
+    }
+
+    private static byte[] digest(int i) {
+        return Sha256Hash.hash(("message " + i).getBytes());
+    }
+
+    @Test
+    public void testMatchesBitcoinj() {
+        for (int i = 0; i < 10; i++) {
+            ExtendedKeyPair key = chain.ckdPriv(i);
+            byte[] digest = digest(i);
+            byte[] expected = ECKey.fromPrivate(key.getPrivKey()).sign(Sha256Hash.wrap(digest)).encodeToDER();
+            assertArrayEquals(expected, key.sign(digest));
+        }
+    }
+
+    @Test
+    public void testVerify() {
+        ExtendedKeyPair key = chain.ckdPriv(3);
+        byte[] signature = key.sign(digest(3));
+
+        assertTrue(key.verify(digest(3), signature));
+        assertTrue(key.neuter().verify(digest(3), signature));
+        assertTrue(ECKey.verify(digest(3), signature, Bip32.serP(key.getPubKey())));
+
+        assertFalse(key.verify(digest(4), signature));
+        assertFalse(chain.ckdPriv(4).verify(digest(3), signature));
+
+        byte[] tampered = signature.clone();
+        tampered[tampered.length - 1] ^= 1;
+        assertFalse(key.verify(digest(3), tampered));
+        assertFalse(key.verify(digest(3), new byte[]{0x30, 0x00}));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testSignRequiresPrivateKey() {
+        chain.neuter().sign(digest(0));
+    }
+
+    @Test
+    public void testDigestLength() {
+        ExtendedKeyPair key = chain.ckdPriv(0);
+        byte[] message = "message 0".getBytes();
+        byte[] longer = new byte[33];
+        System.arraycopy(digest(0), 0, longer, 0, 32);
+        for (byte[] notDigest : new byte[][]{message, new byte[31], longer}) {
+            try {
+                key.sign(notDigest);
+                fail("signed a " + notDigest.length + " byte input");
+            } catch (IllegalArgumentException expected) {
+                // expected
+            }
+            try {
+                key.verify(notDigest, key.sign(digest(0)));
+                fail("verified a " + notDigest.length + " byte input");
+            } catch (IllegalArgumentException expected) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testSignBatch() {
+        List<ExtendedKeyPair> keys = new ArrayList<>();
+        List<byte[]> digests = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            keys.add(chain.ckdPriv(i % 8));
+            digests.add(digest(i));
+        }
+
+        byte[][] signatures = ExtendedKeyPair.signBatch(keys, digests);
+        for (int i = 0; i < signatures.length; i++) {
+            assertArrayEquals(keys.get(i).sign(digests.get(i)), signatures[i]);
+            assertTrue(keys.get(i).verify(digests.get(i), signatures[i]));
+        }
+    }
+}
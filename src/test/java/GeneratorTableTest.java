@@ -0,0 +1,90 @@
+import org.bouncycastle.math.ec.ECPoint;
+import org.bouncycastle.math.ec.FixedPointPreCompInfo;
+import org.bouncycastle.math.ec.FixedPointUtil;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.math.BigInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class GeneratorTableTest {
+
+    private static ECPoint freshG() {
+        ECPoint G = Bip32.curve().getG().normalize();
+        return G.getCurve().createPoint(G.getAffineXCoord().toBigInteger(), G.getAffineYCoord().toBigInteger());
+    }
+
+    @Test
+    public void testBundledTableMatchesComputed() throws Exception {
+        ByteArrayOutputStream computed = new ByteArrayOutputStream();
+        GeneratorTable.write(freshG(), computed);
+
+        InputStream in = GeneratorTable.class.getResourceAsStream(GeneratorTable.RESOURCE);
+        assertNotNull(in);
+        ByteArrayOutputStream bundled = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        int n;
+        while ((n = in.read(buf)) > 0) {
+            bundled.write(buf, 0, n);
+        }
+        in.close();
+
+        assertArrayEquals(computed.toByteArray(), bundled.toByteArray());
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        ECPoint G = freshG();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GeneratorTable.write(G, out);
+
+        FixedPointPreCompInfo expected = FixedPointUtil.getFixedPointPreCompInfo(
+                G.getCurve().getPreCompInfo(G, FixedPointUtil.PRECOMP_NAME));
+        FixedPointPreCompInfo actual = GeneratorTable.read(G.getCurve(), new ByteArrayInputStream(out.toByteArray()));
+
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertTrue(expected.getOffset().equals(actual.getOffset()));
+        assertEquals(expected.getPreComp().length, actual.getPreComp().length);
+        for (int i = 0; i < expected.getPreComp().length; i++) {
+            assertTrue(expected.getPreComp()[i].equals(actual.getPreComp()[i]));
+        }
+    }
+
+    @Test
+    public void testPointMatchesDefaultMultiplier() {
+        BigInteger[] scalars = {
+                BigInteger.ONE,
+                BigInteger.valueOf(2),
+                new BigInteger("e8f32e723decf4051aedf3a8e9c1f4a0a4bf8d6a5d6c6b7e52c6b4e8c1a3b2f1", 16),
+                Bip32.curve().getN().subtract(BigInteger.ONE)
+        };
+        for (BigInteger k : scalars) {
+            assertTrue(freshG().multiply(k).equals(Bip32.point(k)));
+        }
+    }
+
+    @Test
+    public void testInstallRejectsDamagedTable() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GeneratorTable.write(freshG(), out);
+        byte[] table = out.toByteArray();
+        assertTrue(GeneratorTable.install(freshG(), new ByteArrayInputStream(table)));
+
+        // one bit in the y coordinate of a late comb entry; the header and the first entry (G) are untouched
+        byte[] damaged = table.clone();
+        damaged[damaged.length - 40] ^= 0x01;
+        assertFalse(GeneratorTable.install(freshG(), new ByteArrayInputStream(damaged)));
+
+        // a point that is on the curve but in the wrong slot
+        byte[] swapped = table.clone();
+        System.arraycopy(table, table.length - 64, swapped, table.length - 128, 64);
+        assertFalse(GeneratorTable.install(freshG(), new ByteArrayInputStream(swapped)));
+    }
+}
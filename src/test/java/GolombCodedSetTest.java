@@ -0,0 +1,133 @@
+import org.bouncycastle.util.encoders.Hex;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class GolombCodedSetTest {
+
+    private static byte[] blockKey(String blockHash) {
+        // the key is the first 16 bytes of the block hash in internal (reversed) byte order
+        byte[] hash = Hex.decode(blockHash);
+        byte[] key = new byte[16];
+        for (int i = 0; i < 16; i++) {
+            key[i] = hash[31 - i];
+        }
+        return key;
+    }
+
+    @Test
+    public void testTestnetGenesisFilter() {
+        // BIP-158 test vector for testnet block 0: the filter holds the coinbase output script
+        byte[] key = blockKey("000000000933ea01ad0ee984209779baaec3ced90fa3f408719526f8d77f4943");
+        byte[] script = Hex.decode("4104678afdb0fe5548271967f1a67130b7105cd6a828e03909a67962e0ea1f61deb649f6bc3f4cef38c4f35504e51ec112de5c384df7ba0b8d578a4c702b6bf11d5fac");
+
+        GolombCodedSet built = GolombCodedSet.build(key, GolombCodedSet.BASIC_P, GolombCodedSet.BASIC_M, script, script.length, 1);
+        assertEquals("019dfca8", Hex.toHexString(built.serialize()));
+
+        GolombCodedSet parsed = GolombCodedSet.parse(key, GolombCodedSet.BASIC_P, GolombCodedSet.BASIC_M, Hex.decode("019dfca8"));
+        assertTrue(parsed.contains(script));
+        assertFalse(parsed.contains(new byte[]{0x51}));
+    }
+
+    @Test
+    public void testSipHash() {
+        // reference vectors: key 00..0f, message 00..(n-1)
+        long k0 = 0x0706050403020100L;
+        long k1 = 0x0f0e0d0c0b0a0908L;
+        assertEquals(0x726fdb47dd0e0e31L, GolombCodedSet.sipHash(k0, k1, new byte[0], 0, 0));
+        byte[] message = new byte[15];
+        for (int i = 0; i < message.length; i++) {
+            message[i] = (byte) i;
+        }
+        assertEquals(0xa129ca6149be45e5L, GolombCodedSet.sipHash(k0, k1, message, 0, 15));
+    }
+
+    @Test
+    public void testMultiplyHighUnsigned() {
+        Random random = new Random(3);
+        BigInteger mask = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+        for (int i = 0; i < 1000; i++) {
+            long a = random.nextLong();
+            long b = random.nextLong();
+            BigInteger expected = new BigInteger(Long.toUnsignedString(a))
+                    .multiply(new BigInteger(Long.toUnsignedString(b))).shiftRight(64).and(mask);
+            assertEquals(expected.longValue(), GolombCodedSet.multiplyHighUnsigned(a, b));
+        }
+    }
+
+    @Test
+    public void testMembership() {
+        Random random = new Random(11);
+        byte[] key = new byte[16];
+        random.nextBytes(key);
+        int count = 500;
+        byte[] items = new byte[count * 20];
+        random.nextBytes(items);
+
+        GolombCodedSet set = GolombCodedSet.build(key, GolombCodedSet.BASIC_P, GolombCodedSet.BASIC_M, items, 20, count);
+        GolombCodedSet parsed = GolombCodedSet.parse(key, GolombCodedSet.BASIC_P, GolombCodedSet.BASIC_M, set.serialize());
+        assertEquals(count, parsed.size());
+        for (int i = 0; i < count; i++) {
+            assertTrue(parsed.contains(items, i * 20, 20));
+        }
+
+        int falsePositives = 0;
+        byte[] other = new byte[20];
+        for (int i = 0; i < 10000; i++) {
+            random.nextBytes(other);
+            if (parsed.contains(other)) {
+                falsePositives++;
+            }
+        }
+        // expected rate is 1/M
+        assertTrue(falsePositives <= 2);
+    }
+
+    @Test
+    public void testBuildDeduplicates() {
+        Random random = new Random(13);
+        byte[] key = new byte[16];
+        random.nextBytes(key);
+        byte[] items = new byte[10 * 20];
+        random.nextBytes(items);
+
+        // the same 10 items, with the first 5 repeated, as overlapping derivation ranges would produce
+        byte[] overlapping = new byte[15 * 20];
+        System.arraycopy(items, 0, overlapping, 0, items.length);
+        System.arraycopy(items, 0, overlapping, items.length, 5 * 20);
+
+        GolombCodedSet expected = GolombCodedSet.build(key, GolombCodedSet.BASIC_P, GolombCodedSet.BASIC_M, items, 20, 10);
+        GolombCodedSet actual = GolombCodedSet.build(key, GolombCodedSet.BASIC_P, GolombCodedSet.BASIC_M, overlapping, 20, 15);
+        assertEquals(10, actual.size());
+        assertEquals(Hex.toHexString(expected.serialize()), Hex.toHexString(actual.serialize()));
+    }
+
+    @Test
+    public void testMalformedFilters() {
+        byte[] key = new byte[16];
+        byte[] element = new byte[]{1, 2, 3};
+
+        for (byte[] bad : new byte[][]{{}, {(byte) 0xfd, 0x01}, {(byte) 0xfe, 0, 0}, {(byte) 0xff}}) {
+            try {
+                GolombCodedSet.parse(key, GolombCodedSet.BASIC_P, GolombCodedSet.BASIC_M, bad);
+                fail("parsed " + Hex.toHexString(bad));
+            } catch (IllegalArgumentException expected) {
+                // expected
+            }
+        }
+
+        // N is larger than the stream encodes, or the stream is cut short: queries stop at the end of the data
+        long[] targets = {0, 1, Long.MAX_VALUE};
+        for (String hex : new String[]{"05", "059d", "fdffff00", "fe00000100ff"}) {
+            GolombCodedSet truncated = GolombCodedSet.parse(key, GolombCodedSet.BASIC_P, GolombCodedSet.BASIC_M, Hex.decode(hex));
+            assertFalse(truncated.contains(element));
+            truncated.matchAny(targets, targets.length);
+        }
+    }
+}
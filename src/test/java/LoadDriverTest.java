@@ -0,0 +1,129 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LoadDriverTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testHistogramPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long v = 1; v <= 100000; v++) {
+            histogram.record(v);
+        }
+
+        assertEquals(100000, histogram.getCount());
+        assertEquals(1, histogram.getMin());
+        assertEquals(100000, histogram.getMax());
+        assertEquals(50000.5, histogram.getMean(), 1e-6);
+        assertWithin(50000, histogram.getValueAtPercentile(50));
+        assertWithin(99000, histogram.getValueAtPercentile(99));
+        assertWithin(99900, histogram.getValueAtPercentile(99.9));
+        assertEquals(100000, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void testHistogramBuckets() {
+        Random random = new Random(1);
+        for (int i = 0; i < 100000; i++) {
+            long value = random.nextLong() >>> (1 + random.nextInt(63));
+            long upper = LatencyHistogram.upperBound(LatencyHistogram.index(value));
+            assertTrue(upper >= value);
+            assertTrue(upper - value <= value / LatencyHistogram.SUB_BUCKETS * 2);
+        }
+    }
+
+    @Test
+    public void testHistogramAdd() {
+        LatencyHistogram a = new LatencyHistogram();
+        LatencyHistogram b = new LatencyHistogram();
+        a.record(10);
+        b.record(1000);
+        a.add(b);
+        assertEquals(2, a.getCount());
+        assertEquals(10, a.getMin());
+        assertEquals(1000, a.getMax());
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue("expected about " + expected + " but was " + actual,
+                Math.abs(actual - expected) <= expected * 2 / LatencyHistogram.SUB_BUCKETS);
+    }
+
+    @Test
+    public void testRun() throws Exception {
+        File out = new File(folder.getRoot(), "results.json");
+        LoadDriver.Config config = LoadDriver.Config.parse(new String[]{
+                "--threads", "2",
+                "--rate", "200",
+                "--duration", "0.5",
+                "--warmup", "0.2",
+                "--accounts", "2",
+                "--indexes", "10",
+                "--range", "3",
+                "--mix", "generate=1,ckdPubRange=1,parse=1,import=1",
+                "--out", out.getPath()
+        });
+
+        LoadDriver.Results results = new LoadDriver(config).run();
+        // 100 operations are scheduled in the measured window, which an idle driver keeps up with
+        assertEquals(100, results.scheduled);
+        assertEquals(results.scheduled, results.getCompleted() + results.dropped);
+        assertTrue(results.getCompleted() >= 90);
+
+        String json = new String(Files.readAllBytes(out.toPath()), StandardCharsets.UTF_8);
+        for (String key : new String[]{"\"throughput\"", "\"targetRate\"", "\"dropped\"", "\"generate\"", "\"ckdPubRange\"", "\"parse\"", "\"import\"",
+                "\"p50\"", "\"p99\"", "\"p99.9\""}) {
+            assertTrue(json.contains(key));
+        }
+    }
+
+    @Test
+    public void testSaturated() throws Exception {
+        File out = new File(folder.getRoot(), "saturated.json");
+        LoadDriver.Config config = LoadDriver.Config.parse(new String[]{
+                "--threads", "1",
+                "--rate", "1000000",
+                "--duration", "0.5",
+                "--warmup", "0",
+                "--mix", "generate=1",
+                "--out", out.getPath()
+        });
+
+        long started = System.nanoTime();
+        LoadDriver.Results results = new LoadDriver(config).run();
+        double elapsedSeconds = (System.nanoTime() - started) / 1e9;
+
+        // the run stops at the end of the window instead of draining a backlog of half a million operations
+        assertTrue("took " + elapsedSeconds + " s", elapsedSeconds < 5);
+        assertTrue(results.throughput > 0);
+        assertTrue(results.throughput < config.rate);
+        assertTrue(results.dropped > 0);
+        assertEquals(results.scheduled, results.getCompleted() + results.dropped);
+
+        // the backlog is in the tail: most operations waited for most of the window
+        LatencyHistogram all = results.histograms.get("all");
+        assertEquals(results.scheduled, all.getCount());
+        assertTrue(all.getValueAtPercentile(99) > TimeUnit.MILLISECONDS.toNanos(400));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeWeight() {
+        LoadDriver.Config.parse(new String[]{"--mix", "generate=5,parse=-3"});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownOperation() {
+        LoadDriver.Config.parse(new String[]{"--mix", "generate=1,sign=1"});
+    }
+}
@@ -0,0 +1,105 @@
+import org.bouncycastle.crypto.digests.RIPEMD160Digest;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.util.encoders.Hex;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WatchSetTest {
+    private ExtendedKeyPair chain;
+
+    @Before
+    public void setup() {
+        chain = Bip32.generateMasterKey(Hex.decode("000102030405060708090a0b0c0d0e0f")).generate("m/0H/0").neuter();
+    }
+
+    private static String item(WatchSet set, int i) {
+        byte[] item = new byte[set.getElement().getSize()];
+        set.get(i, item, 0);
+        return Hex.toHexString(item);
+    }
+
+    @Test
+    public void testElements() {
+        ExtendedKeyPair child = chain.ckdPub(7);
+        byte[] hash160 = Bip32.hash160(child.getPubKey());
+        String hex = Hex.toHexString(hash160);
+
+        byte[] redeemScript = Hex.decode("0014" + hex);
+        byte[] scriptHash = new byte[20];
+        Bip32.hash160(redeemScript, 0, redeemScript.length, new SHA256Digest(), new RIPEMD160Digest(), new byte[32],
+                scriptHash, 0);
+
+        String[] expected = {
+                Hex.toHexString(Bip32.serP(child.getPubKey())),
+                hex,
+                "76a914" + hex + "88ac",
+                "a914" + Hex.toHexString(scriptHash) + "87",
+                "0014" + hex
+        };
+        for (WatchSet.Element element : WatchSet.Element.values()) {
+            WatchSet set = new WatchSet(element, 1);
+            set.addRange(chain, 7, 1);
+            assertEquals(1, set.size());
+            assertEquals(expected[element.ordinal()], item(set, 0));
+
+            WatchSet fromPubKey = new WatchSet(element, 1);
+            fromPubKey.addPubKey(Bip32.serP(child.getPubKey()), 0);
+            assertEquals(expected[element.ordinal()], item(fromPubKey, 0));
+        }
+    }
+
+    @Test
+    public void testBloomFilterGrowsWithGapWindow() {
+        WatchSet set = new WatchSet(WatchSet.Element.P2WPKH_SCRIPT, 4);
+        set.addRange(chain, 0, 20);
+        BloomFilter filter = set.toBloomFilter(20, 0.0001, 99);
+
+        // extend the gap window after the filter was built
+        set.addRange(chain, 20, 20);
+        assertEquals(40, set.size());
+
+        byte[] item = new byte[set.getElement().getSize()];
+        for (int i = 0; i < set.size(); i++) {
+            set.get(i, item, 0);
+            assertTrue(filter.contains(item));
+        }
+
+        set.detach(filter);
+        set.addRange(chain, 40, 1);
+        set.get(40, item, 0);
+        assertFalse(filter.contains(item));
+    }
+
+    @Test
+    public void testMatchAny() {
+        WatchSet set = new WatchSet(WatchSet.Element.P2PKH_SCRIPT);
+        set.addRange(chain, 0, 50);
+
+        Random random = new Random(5);
+        byte[] key = new byte[16];
+        random.nextBytes(key);
+
+        // a "block" with unrelated scripts only
+        int count = 200;
+        byte[] scripts = new byte[(count + 1) * 25];
+        random.nextBytes(scripts);
+        GolombCodedSet unrelated = GolombCodedSet.build(key, GolombCodedSet.BASIC_P, GolombCodedSet.BASIC_M,
+                scripts, 25, count);
+        assertFalse(set.matchAny(unrelated));
+
+        // the same block paying to one of our keys
+        set.get(37, scripts, count * 25);
+        GolombCodedSet paying = GolombCodedSet.build(key, GolombCodedSet.BASIC_P, GolombCodedSet.BASIC_M,
+                scripts, 25, count + 1);
+        assertTrue(set.matchAny(paying));
+
+        // and the watch set turned into a filter matches itself
+        assertTrue(set.matchAny(set.toGolombCodedSet(key, GolombCodedSet.BASIC_P, GolombCodedSet.BASIC_M)));
+    }
+}